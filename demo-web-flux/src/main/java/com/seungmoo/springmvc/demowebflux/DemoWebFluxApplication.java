@@ -0,0 +1,17 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * demo-web-mvc의 Event API, 파일 업로드/다운로드를 WebFlux(Netty)로 옮긴 버전
+ * 요청마다 thread를 잡고 있지 않으므로 다운로드가 몰리는 곳에 따로 띄운다.
+ */
+@SpringBootApplication
+public class DemoWebFluxApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(DemoWebFluxApplication.class, args);
+    }
+
+}
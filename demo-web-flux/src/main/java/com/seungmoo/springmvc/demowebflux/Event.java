@@ -0,0 +1,30 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import java.time.LocalDate;
+
+// demo-web-mvc의 Event와 같은 JSON 형식
+@Getter
+@Setter
+public class Event {
+
+    interface ValidateLimit {}
+    interface ValidateName {}
+    interface ValidateAll extends ValidateName, ValidateLimit {}
+
+    private Integer id;
+
+    @NotBlank(groups = {ValidateName.class})
+    private String name;
+
+    @Min(value = 1, groups = {ValidateLimit.class})
+    private Integer limit;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate startDate;
+}
@@ -0,0 +1,161 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.seungmoo.springmvc.demowebflux.WebConfig.APPLICATION_NDJSON_VALUE;
+
+/**
+ * demo-web-mvc EventApiController와 같은 route
+ * request body를 Flux<Event>로 받으면 codec이 body를 읽는 대로 Event를 하나씩 흘려보낸다. (전체를 list로 만들지 않는다.)
+ */
+@Slf4j
+@Controller
+@RequestMapping("/api/events")
+public class EventApiController {
+
+    // ingest 응답에 담을 오류 메시지 최대 개수
+    private static final int MAX_INGEST_ERRORS = 100;
+
+    @Autowired
+    private EventStore eventStore;
+
+    @Autowired
+    private Validator validator;
+
+    @PostMapping
+    @ResponseBody
+    public Mono<ResponseEntity<Event>> createEvent(@RequestBody Mono<Event> request) {
+        return request.map(event -> {
+            if (!validator.validate(event, Event.ValidateAll.class).isEmpty()) {
+                return ResponseEntity.badRequest().<Event>build();
+            }
+            return new ResponseEntity<>(eventStore.create(event), HttpStatus.OK);
+        });
+    }
+
+    // 저장된 Event 목록, NDJSON이면 한 줄씩 바로 내보낸다.
+    @GetMapping(produces = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public Flux<Event> events() {
+        return eventStore.findAll();
+    }
+
+    // 여러 Event를 한번에 등록 (JSON 배열 or NDJSON), 건별 결과를 돌려준다.
+    // 형식이 깨진 곳을 만나면 malformed 결과 하나를 쓰고 멈춘다.
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+            produces = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public Flux<Map<String, Object>> createEvents(@RequestBody Flux<Event> events) {
+        AtomicLong index = new AtomicLong();
+        return events
+                .map(event -> {
+                    Set<ConstraintViolation<Event>> violations = validator.validate(event, Event.ValidateAll.class);
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("index", index.getAndIncrement());
+                    if (violations.isEmpty()) {
+                        result.put("status", "created");
+                        result.put("event", eventStore.create(event));
+                    } else {
+                        result.put("status", "invalid");
+                        List<Map<String, String>> errors = new ArrayList<>();
+                        for (ConstraintViolation<Event> violation : violations) {
+                            Map<String, String> error = new LinkedHashMap<>();
+                            error.put("field", violation.getPropertyPath().toString());
+                            error.put("message", violation.getMessage());
+                            errors.add(error);
+                        }
+                        result.put("errors", errors);
+                    }
+                    return result;
+                })
+                .onErrorResume(EventApiController::isMalformed, ex -> {
+                    log.warn("malformed event at index {} : {}", index.get(), malformedMessage(ex));
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("index", index.get());
+                    result.put("status", "malformed");
+                    result.put("message", malformedMessage(ex));
+                    return Mono.just(result);
+                });
+    }
+
+    // 대량 NDJSON 적재, 건별 결과 대신 집계만 돌려준다. --> 메모리 사용량 일정
+    // codec이 Event로 만들지 못한 줄(type이 맞지 않는 값 포함)을 만나면 거기서 멈추고 malformed로 표시한다.
+    @PostMapping(value = "/ingest", consumes = APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public Mono<Map<String, Object>> ingestEvents(@RequestBody Flux<Event> events) {
+        IngestSummary summary = new IngestSummary();
+        return events
+                .doOnNext(event -> {
+                    summary.received++;
+                    Set<ConstraintViolation<Event>> violations = validator.validate(event, Event.ValidateAll.class);
+                    if (violations.isEmpty()) {
+                        eventStore.create(event);
+                        summary.accepted++;
+                    } else {
+                        summary.rejected++;
+                        for (ConstraintViolation<Event> violation : violations) {
+                            summary.addError("event " + summary.received + " : " + violation.getPropertyPath() + " " + violation.getMessage());
+                        }
+                    }
+                })
+                .then(Mono.fromCallable(summary::toMap))
+                .onErrorResume(EventApiController::isMalformed, ex -> {
+                    summary.malformed = true;
+                    summary.addError("event " + (summary.received + 1) + " : " + malformedMessage(ex));
+                    return Mono.just(summary.toMap());
+                });
+    }
+
+    // codec의 DecodingException은 ServerWebInputException(400)으로 감싸져서 온다.
+    private static boolean isMalformed(Throwable ex) {
+        return ex instanceof DecodingException || ex.getCause() instanceof DecodingException;
+    }
+
+    private static String malformedMessage(Throwable ex) {
+        return ex instanceof DecodingException ? ex.getMessage() : ex.getCause().getMessage();
+    }
+
+    // Flux는 한 번에 원소 하나씩 순서대로 넘어오므로 동기화하지 않아도 된다.
+    private static class IngestSummary {
+        long received;
+        long accepted;
+        long rejected;
+        boolean malformed;
+        final List<String> errors = new ArrayList<>();
+
+        void addError(String error) {
+            if (errors.size() < MAX_INGEST_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("received", received);
+            map.put("accepted", accepted);
+            map.put("rejected", rejected);
+            map.put("malformed", malformed);
+            map.put("errors", errors);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event 저장소 (메모리)
+ * 모든 메소드가 바로 끝나므로 event loop thread에서 불러도 된다. (blocking I/O 없음)
+ * demo-web-mvc의 EventRepository처럼 로그 파일에 남기지는 않는다. --> 다운로드 tier는 Event 원본을 갖지 않는다.
+ */
+@Component
+public class EventStore {
+
+    private final Map<Integer, Event> events = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public Event create(Event event) {
+        Event stored = new Event();
+        stored.setId(sequence.incrementAndGet());
+        stored.setName(event.getName());
+        stored.setLimit(event.getLimit());
+        stored.setStartDate(event.getStartDate());
+        events.put(stored.getId(), stored);
+        return stored;
+    }
+
+    public Optional<Event> findById(int id) {
+        return Optional.ofNullable(events.get(id));
+    }
+
+    // 목록을 모아서 만들지 않고 하나씩 흘려보낸다.
+    public Flux<Event> findAll() {
+        return Flux.fromIterable(events.values());
+    }
+}
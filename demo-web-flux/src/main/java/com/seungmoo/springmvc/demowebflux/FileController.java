@@ -0,0 +1,192 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * demo-web-mvc FileController와 같은 route (업로드 form 화면은 없다.)
+ * - 업로드 : body를 DataBuffer 단위로 받는 대로 파일에 쓴다. (thread가 body를 기다리며 blocking 하지 않는다.)
+ * - 다운로드 : ZeroCopyHttpOutputMessage --> Netty가 sendfile로 파일을 socket에 바로 보낸다. (heap으로 읽어들이지 않음)
+ *   Range 요청(하나의 구간)도 같은 방식으로 그 구간만 보낸다.
+ * - 저장 위치는 file.upload.dir, 파일 이름 그대로 저장한다. (demo-web-mvc의 file.store.type=local과 같은 구조)
+ * - 파일 metadata 조회, move 같은 blocking 파일 작업은 boundedElastic scheduler에서 한다. (event loop를 막지 않도록)
+ */
+@Slf4j
+@Controller
+public class FileController {
+
+    private final Path storeDir;
+    private final long maxSize;
+
+    public FileController(@Value("${file.upload.dir:${java.io.tmpdir}/demo-web-mvc/upload}") String uploadDir,
+                          @Value("${file.upload.max-size:10GB}") DataSize maxSize) throws IOException {
+        this.storeDir = Files.createDirectories(Paths.get(uploadDir));
+        this.maxSize = maxSize.toBytes();
+    }
+
+    // multipart 업로드, part를 임시 파일로 옮긴 뒤 저장한다.
+    @PostMapping("/file")
+    @ResponseBody
+    public Mono<ResponseEntity<Map<String, Object>>> fileUpload(@RequestPart("file") Mono<FilePart> file) {
+        return file.flatMap(part -> {
+            String name = cleanFilename(part.filename());
+            return createTempFile().flatMap(temp -> part.transferTo(temp)
+                    .then(place(name, temp))
+                    .doOnError(ex -> deleteQuietly(temp)));
+        });
+    }
+
+    // multipart를 거치지 않는 업로드
+    // ex) curl -T big.iso http://localhost:8081/file/big.iso
+    @PutMapping("/file/{filename}")
+    @ResponseBody
+    public Mono<ResponseEntity<Map<String, Object>>> fileStreamUpload(@PathVariable String filename,
+                                                                      @RequestBody Flux<DataBuffer> body) {
+        String name = cleanFilename(filename);
+        AtomicLong size = new AtomicLong();
+        Flux<DataBuffer> limited = body.doOnNext(buffer -> {
+            if (size.addAndGet(buffer.readableByteCount()) > maxSize) {
+                DataBufferUtils.release(buffer);
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "File is larger than " + maxSize + " bytes : " + name);
+            }
+        });
+        return createTempFile().flatMap(temp -> DataBufferUtils.write(limited, temp)
+                .then(place(name, temp))
+                .doOnError(ex -> deleteQuietly(temp)));
+    }
+
+    @GetMapping("/file/{filename}")
+    public Mono<Void> fileDownload(@PathVariable String filename, ServerWebExchange exchange) {
+        Path path = storeDir.resolve(cleanFilename(filename));
+        ServerHttpResponse response = exchange.getResponse();
+        return Mono.fromCallable(() -> Files.isRegularFile(path)
+                        ? new long[]{Files.size(path), Files.getLastModifiedTime(path).toMillis()}
+                        : null)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(stat -> {
+                    long length = stat[0];
+                    Instant lastModified = Instant.ofEpochMilli(stat[1]);
+                    String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(stat[1]) + "\"";
+                    if (exchange.checkNotModified(etag, lastModified)) {
+                        return response.setComplete();
+                    }
+
+                    HttpHeaders headers = response.getHeaders();
+                    headers.setContentType(MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM));
+                    headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+                    long position = 0;
+                    long count = length;
+                    List<HttpRange> ranges = parseRanges(exchange);
+                    // 여러 구간을 요청하면 무시하고 전체를 보낸다. (RFC 7233 허용)
+                    if (ranges != null && ranges.size() == 1) {
+                        HttpRange range = ranges.get(0);
+                        position = range.getRangeStart(length);
+                        if (position >= length) {
+                            response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                            return response.setComplete();
+                        }
+                        count = range.getRangeEnd(length) - position + 1;
+                        response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+                        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + position + "-" + (position + count - 1) + "/" + length);
+                    }
+                    headers.setContentLength(count);
+                    return write(response, path, position, count);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    response.setStatusCode(HttpStatus.NOT_FOUND);
+                    return response.setComplete();
+                }));
+    }
+
+    @ExceptionHandler
+    @ResponseBody
+    public ResponseEntity<String> invalidFilename(IllegalArgumentException exception) {
+        return ResponseEntity.badRequest().body(exception.getMessage());
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, Path path, long position, long count) {
+        // Netty 서버면 sendfile, 아니면(ex. test용 mock 응답) 파일을 DataBuffer로 나눠 읽어서 보낸다.
+        if (response instanceof ZeroCopyHttpOutputMessage) {
+            return ((ZeroCopyHttpOutputMessage) response).writeWith(path, position, count);
+        }
+        Flux<DataBuffer> body = DataBufferUtils.read(path, new DefaultDataBufferFactory(), 64 * 1024);
+        return response.writeWith(DataBufferUtils.takeUntilByteCount(DataBufferUtils.skipUntilByteCount(body, position), count));
+    }
+
+    private static List<HttpRange> parseRanges(ServerWebExchange exchange) {
+        try {
+            List<HttpRange> ranges = exchange.getRequest().getHeaders().getRange();
+            return ranges.isEmpty() ? null : ranges;
+        } catch (IllegalArgumentException ex) {
+            // 형식이 잘못된 Range header는 없는 것으로 본다.
+            return null;
+        }
+    }
+
+    private Mono<Path> createTempFile() {
+        // 최종 위치와 같은 file system에 임시 파일을 만들어야 move가 atomic 하다.
+        return Mono.fromCallable(() -> Files.createTempFile(storeDir, "upload-", ".tmp"))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<ResponseEntity<Map<String, Object>>> place(String name, Path temp) {
+        return Mono.fromCallable(() -> {
+            Path target = storeDir.resolve(name);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Map<String, Object> stored = new LinkedHashMap<>();
+            stored.put("name", name);
+            stored.put("size", Files.size(target));
+            return ResponseEntity.status(HttpStatus.CREATED).body(stored);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("failed to delete {}", path, ex);
+        }
+    }
+
+    static String cleanFilename(String filename) {
+        String name = StringUtils.getFilename(StringUtils.cleanPath(String.valueOf(filename)));
+        if (!StringUtils.hasText(name) || name.equals(".") || name.equals("..") || name.equals("null")) {
+            throw new IllegalArgumentException("Invalid file name : " + filename);
+        }
+        return name;
+    }
+}
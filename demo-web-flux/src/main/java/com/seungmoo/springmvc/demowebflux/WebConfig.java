@@ -0,0 +1,35 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.Collections;
+
+@Configuration
+public class WebConfig implements WebFluxConfigurer {
+
+    // 한 줄에 JSON 하나 (newline delimited JSON), Spring 5.2의 기본 codec은 이 type을 모른다.
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    private final ObjectMapper objectMapper;
+
+    public WebConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        // 읽을 때 : root level JSON 값을 하나씩 Flux로 꺼낸다.
+        configurer.customCodecs().register(new Jackson2JsonDecoder(objectMapper, APPLICATION_NDJSON));
+        // 쓸 때 : Flux 원소마다 JSON 한 줄씩 바로 써내려간다. (streaming type이 아니면 list로 모은 뒤에 쓴다.)
+        Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(objectMapper, APPLICATION_NDJSON);
+        encoder.setStreamingMediaTypes(Collections.singletonList(APPLICATION_NDJSON));
+        configurer.customCodecs().register(encoder);
+    }
+}
@@ -0,0 +1,84 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureWebTestClient
+public class EventApiControllerTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    public void createEvent() {
+        webTestClient.post().uri("/api/events")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"seungmoo\",\"limit\":20}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("id").exists()
+                .jsonPath("name").isEqualTo("seungmoo");
+
+        webTestClient.post().uri("/api/events")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"\",\"limit\":20}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void createEventsFromNdjson() {
+        String ndjson = "{\"name\":\"first\",\"limit\":10}\n{\"name\":\"\",\"limit\":2}\n{\"name\":";
+
+        String response = webTestClient.post().uri("/api/events/batch")
+                .contentType(WebConfig.APPLICATION_NDJSON)
+                .accept(WebConfig.APPLICATION_NDJSON)
+                .bodyValue(ndjson)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // 한 줄에 결과 하나, 형식이 깨진 곳에서 멈춘다.
+        String[] lines = response.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(true, lines[0].contains("\"created\""));
+        assertEquals(true, lines[1].contains("\"invalid\""));
+        assertEquals(true, lines[2].contains("\"malformed\""));
+    }
+
+    @Test
+    public void ingestEvents() {
+        String ndjson = "{\"name\":\"first\",\"limit\":10,\"startDate\":\"2020-10-13\"}\n"
+                + "{\"name\":\"\",\"limit\":1}\n"
+                + "{\"name\":\"third\",\"limit\":3}\n";
+
+        webTestClient.post().uri("/api/events/ingest")
+                .contentType(WebConfig.APPLICATION_NDJSON)
+                .bodyValue(ndjson)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("received").isEqualTo(3)
+                .jsonPath("accepted").isEqualTo(2)
+                .jsonPath("rejected").isEqualTo(1)
+                .jsonPath("malformed").isEqualTo(false);
+
+        webTestClient.get().uri("/api/events")
+                .accept(WebConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(WebConfig.APPLICATION_NDJSON);
+    }
+}
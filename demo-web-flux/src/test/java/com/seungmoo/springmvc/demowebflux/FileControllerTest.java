@@ -0,0 +1,60 @@
+package com.seungmoo.springmvc.demowebflux;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+
+// 실제 Netty 서버로 띄워야 다운로드가 zero-copy(sendfile) 경로를 탄다.
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "file.upload.dir=${java.io.tmpdir}/demo-web-flux-test/upload")
+public class FileControllerTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    public void uploadAndDownload() {
+        webTestClient.put().uri("/file/hello.txt")
+                .bodyValue("hello webflux".getBytes(StandardCharsets.UTF_8))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody().jsonPath("size").isEqualTo(13);
+
+        String etag = webTestClient.get().uri("/file/hello.txt")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.TEXT_PLAIN)
+                .expectHeader().contentLength(13)
+                .expectBody(String.class).isEqualTo("hello webflux")
+                .returnResult().getResponseHeaders().getETag();
+
+        // 이어받기
+        webTestClient.get().uri("/file/hello.txt")
+                .header(HttpHeaders.RANGE, "bytes=6-")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 6-12/13")
+                .expectBody(String.class).isEqualTo("webflux");
+
+        webTestClient.get().uri("/file/hello.txt")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    public void notFound() {
+        webTestClient.get().uri("/file/missing.txt")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
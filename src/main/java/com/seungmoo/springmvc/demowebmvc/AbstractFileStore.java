@@ -0,0 +1,154 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * FileStore 구현체들이 같이 쓰는 업로드 처리
+ * - InputStream을 고정 크기(chunk-size) buffer 하나로 읽으면서 바로 디스크에 쓴다. --> 요청 당 메모리 사용량이 chunk-size로 고정
+ * - 쓰는 동안 SHA-256을 같이 계산한다. (다 쓴 다음 파일을 다시 읽지 않음)
+ * - Content-Length가 최대 크기를 넘으면 한 바이트도 읽지 않고 거절하고,
+ *   Content-Length가 없더라도 읽은 크기가 최대 크기를 넘는 순간 중단한다.
+ * - 임시 파일에 다 쓴 다음 구현체가 최종 위치로 옮긴다. (place) --> 쓰다 만 파일이 보이지 않는다.
+ *   임시 파일은 저장 위치 아래의 별도 directory(.tmp)에 만든다. (저장된 파일 이름과 섞이지 않게)
+ */
+@Slf4j
+public abstract class AbstractFileStore implements FileStore {
+
+    protected final Path storeDir;
+    private final Path tempDir;
+    private final int chunkSize;
+    private final long maxSize;
+
+    protected AbstractFileStore(Path storeDir, int chunkSize, long maxSize) throws IOException {
+        this.storeDir = Files.createDirectories(storeDir);
+        this.tempDir = Files.createDirectories(storeDir.resolve(".tmp"));
+        deleteStaleTempFiles();
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 다 받은 임시 파일을 최종 위치로 옮긴다.
+     * 구현체는 source를 옮기거나 지워야 한다.
+     */
+    protected abstract StoredFile place(String name, Path source, long size, String sha256) throws IOException;
+
+    @Override
+    public StoredFile store(String filename, InputStream in, long declaredLength) throws IOException {
+        String name = cleanFilename(filename);
+        if (declaredLength > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+
+        MessageDigest digest = sha256();
+        // 최종 위치와 같은 file system에 임시 파일을 만들어야 move가 atomic 하다.
+        Path temp = Files.createTempFile(tempDir, "upload-", ".tmp");
+        long size = 0;
+        try {
+            byte[] buffer = new byte[chunkSize];
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSize) {
+                        throw new MaxUploadSizeExceededException(maxSize);
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            StoredFile storedFile = place(name, temp, size, toHex(digest.digest()));
+            log.info("stored file : {} ({} bytes, sha256={})", name, size, storedFile.getSha256());
+            return storedFile;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * checksum 계산을 위해 파일을 한번 순차적으로 읽는다.
+     */
+    @Override
+    public StoredFile store(String filename, Path source) throws IOException {
+        String name = cleanFilename(filename);
+        long size = Files.size(source);
+        if (size > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[chunkSize];
+        try (InputStream in = Files.newInputStream(source)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StoredFile storedFile = place(name, source, size, toHex(digest.digest()));
+        log.info("stored file : {} ({} bytes, sha256={})", name, size, storedFile.getSha256());
+        return storedFile;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    // 받는 도중에 죽어서 남은 임시 파일
+    private void deleteStaleTempFiles() throws IOException {
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(tempDir, "upload-*.tmp")) {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    protected static void move(Path source, Path target, CopyOption... options) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            // 다른 file system에서 옮겨오는 경우
+            Files.move(source, target, options);
+        }
+    }
+
+    // 브라우저에 따라 경로까지 붙여서 보내는 경우가 있으므로 파일 이름만 남긴다.
+    static String cleanFilename(String filename) {
+        String name = StringUtils.getFilename(StringUtils.cleanPath(String.valueOf(filename)));
+        if (!StringUtils.hasText(name) || name.equals(".") || name.equals("..") || name.equals("null")) {
+            throw new IllegalArgumentException("Invalid file name : " + filename);
+        }
+        return name;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // 모든 JVM은 SHA-256을 지원해야 한다.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * cache, thread pool, session 저장소 상태를 /actuator/metrics에 올린다.
+ * 값은 각 component가 이미 세고 있는 것을 metrics를 읽을 때만 가져온다. (요청 처리 중에는 비용 없음)
+ */
+@Component
+public class CacheMetrics implements MeterBinder {
+
+    @Autowired
+    private HotFileCache hotFileCache;
+
+    @Autowired
+    private EventTaskExecutor eventTaskExecutor;
+
+    // session.store.type=off-heap 일 때만 있다.
+    @Autowired
+    private ObjectProvider<OffHeapSessionStore> sessionStore;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("file.hot-cache.requests", hotFileCache, HotFileCache::getHitCount)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("file.hot-cache.requests", hotFileCache, HotFileCache::getMissCount)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("file.hot-cache.evictions", hotFileCache, HotFileCache::getEvictionCount)
+                .register(registry);
+        Gauge.builder("file.hot-cache.size", hotFileCache, HotFileCache::getSize)
+                .register(registry);
+        Gauge.builder("file.hot-cache.bytes", hotFileCache, HotFileCache::getBytes)
+                .baseUnit("bytes").register(registry);
+
+        Gauge.builder("event.async.active", eventTaskExecutor, EventTaskExecutor::getActiveCount)
+                .register(registry);
+        Gauge.builder("event.async.queued", eventTaskExecutor, EventTaskExecutor::getQueueSize)
+                .register(registry);
+
+        sessionStore.ifAvailable(store -> {
+            Gauge.builder("session.store.sessions", store, OffHeapSessionStore::getSessionCount)
+                    .register(registry);
+            Gauge.builder("session.store.bytes", store, OffHeapSessionStore::getTotalBytes)
+                    .baseUnit("bytes").register(registry);
+        });
+    }
+}
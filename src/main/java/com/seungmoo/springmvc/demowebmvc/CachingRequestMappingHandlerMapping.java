@@ -0,0 +1,146 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 요청 path별로 "path pattern이 맞는 mapping" 목록을 기억해두는 RequestMappingHandlerMapping
+ * - 기본 RequestMappingHandlerMapping은 정확히 같은 URL로 등록된 mapping(/hello/reqJson 같은)이 없으면
+ *   모든 mapping의 pattern({name:[a-z]+} 정규식, /** 등)을 AntPathMatcher로 하나씩 맞춰본다.
+ *   --> mapping이 늘어날수록 요청마다 비용이 늘어난다.
+ * - pattern이 맞는지는 lookup path에만 달려있으므로 path별로 한번만 계산해두고,
+ *   다음부터는 후보가 아닌 mapping은 pattern을 맞춰보지 않고 바로 건너뛴다.
+ *   후보에 대해서는 원래대로 method, header, param, consumes/produces 조건까지 모두 확인한다.
+ *   (가장 구체적인 mapping 고르기, Ambiguous 검사, CORS 처리는 그대로 RequestMappingHandlerMapping이 한다.)
+ * - cache에 없으면 따로 미리 훑지 않고, RequestMappingHandlerMapping이 원래 하는 scan에서 pattern이 맞은 mapping을 기록한다.
+ *   --> miss여도 기본 mapping보다 느려지지 않는다.
+ * - /events/{id}처럼 path가 끝없이 다양할 수 있으므로 두 번째 miss부터 cache에 넣는다. (한번 본 path는 seen에만 기억)
+ *   cache, seen 모두 max-size까지만 두는 LRU라서 id가 매번 다른 path는 cache의 hot entry를 밀어내지 않는다.
+ * - 정확히 같은 URL로 등록된 mapping이 맞은 path(/hello/custom)는 원래도 빠르므로 cache에 넣지 않는다.
+ * - mapping이 추가/삭제되면 cache를 비운다.
+ * - matrix variable 처리는 MatrixVariableRequestMappingHandlerMapping 그대로
+ */
+public class CachingRequestMappingHandlerMapping extends MatrixVariableRequestMappingHandlerMapping {
+
+    private static final String CANDIDATES_ATTRIBUTE = CachingRequestMappingHandlerMapping.class.getName() + ".CANDIDATES";
+
+    private final Map<String, Set<RequestMappingInfo>> candidates;
+    private final Map<String, Boolean> seen;
+    // scan 하는 사이에 mapping이 바뀌었으면 그 결과는 cache에 넣지 않는다.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public CachingRequestMappingHandlerMapping(int maxSize) {
+        this.candidates = lruMap(maxSize);
+        this.seen = lruMap(maxSize);
+    }
+
+    // accessOrder = true --> 가장 오래 안쓴 entry부터 제거 (LRU)
+    private static <V> Map<String, V> lruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @Override
+    protected HandlerMethod lookupHandlerMethod(String lookupPath, HttpServletRequest request) throws Exception {
+        Set<RequestMappingInfo> cached = candidates.get(lookupPath);
+        Candidates current = cached != null ? new Candidates(cached, false) : new Candidates(identitySet(), true);
+        int startGeneration = generation.get();
+        request.setAttribute(CANDIDATES_ATTRIBUTE, current);
+        try {
+            return super.lookupHandlerMethod(lookupPath, request);
+        } finally {
+            request.removeAttribute(CANDIDATES_ATTRIBUTE);
+            if (current.recording) {
+                admit(lookupPath, current, startGeneration);
+            }
+        }
+    }
+
+    @Override
+    protected RequestMappingInfo getMatchingMapping(RequestMappingInfo info, HttpServletRequest request) {
+        Candidates current = (Candidates) request.getAttribute(CANDIDATES_ATTRIBUTE);
+        if (current == null) {
+            return super.getMatchingMapping(info, request);
+        }
+        if (!current.recording) {
+            return current.matched.contains(info) ? super.getMatchingMapping(info, request) : null;
+        }
+        current.scanned++;
+        // pattern을 먼저 본다. 안 맞으면 나머지 조건은 볼 필요가 없다.
+        if (info.getPatternsCondition().getMatchingCondition(request) == null) {
+            return null;
+        }
+        current.matched.add(info);
+        return super.getMatchingMapping(info, request);
+    }
+
+    private void admit(String lookupPath, Candidates current, int startGeneration) {
+        // 정확히 같은 URL의 mapping만 보고 끝났으면 전체를 훑은 것이 아니다.
+        if (current.scanned < getHandlerMethods().size() || startGeneration != generation.get()) {
+            return;
+        }
+        if (seen.remove(lookupPath) != null) {
+            candidates.put(lookupPath, current.matched);
+        } else {
+            seen.put(lookupPath, Boolean.TRUE);
+        }
+    }
+
+    // 등록된 mapping은 늘 같은 instance로 넘어오므로 equals/hashCode 대신 identity로 비교한다.
+    private static Set<RequestMappingInfo> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    int getCacheSize() {
+        return candidates.size();
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        candidates.clear();
+        seen.clear();
+    }
+
+    @Override
+    protected void registerHandlerMethod(Object handler, Method method, RequestMappingInfo mapping) {
+        super.registerHandlerMethod(handler, method, mapping);
+        invalidate();
+    }
+
+    @Override
+    public void registerMapping(RequestMappingInfo mapping, Object handler, Method method) {
+        super.registerMapping(mapping, handler, method);
+        invalidate();
+    }
+
+    @Override
+    public void unregisterMapping(RequestMappingInfo mapping) {
+        super.unregisterMapping(mapping);
+        invalidate();
+    }
+
+    private static class Candidates {
+        final Set<RequestMappingInfo> matched;
+        // true --> cache에 없어서 이번 scan에서 pattern이 맞는 mapping을 모으는 중
+        final boolean recording;
+        int scanned;
+
+        Candidates(Set<RequestMappingInfo> matched, boolean recording) {
+            this.matched = matched;
+            this.recording = recording;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 조각(chunk)으로 나눠서 받는 업로드 하나의 상태
+ * - 받은 chunk는 bitmap(long 하나에 chunk 64개)으로 기록한다.
+ * - bit 셋팅은 CAS로 하므로 여러 chunk가 동시에 들어와도 lock이 필요 없다.
+ * - chunk 쓰기는 read lock, complete/abort는 write lock을 잡는다.
+ *   --> chunk끼리는 동시에 쓰고, 파일을 닫는 작업은 진행 중인 chunk 쓰기가 끝난 뒤에 한다.
+ */
+@Getter
+public class ChunkedUpload {
+
+    // status 응답에 missingChunks를 너무 많이 싣지 않도록 제한
+    private static final int MAX_REPORTED_MISSING_CHUNKS = 1000;
+
+    private final String uploadId;
+    private final String filename;
+    private final long totalSize;
+    private final long chunkSize;
+    private final int chunkCount;
+
+    @JsonIgnore
+    private final Path partFile;
+
+    // complete에서 FileStore로 옮기지 못하면 다시 연다.
+    @JsonIgnore
+    private volatile FileChannel channel;
+
+    @JsonIgnore
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // complete 또는 abort 되어서 더 이상 chunk를 받지 않는다. (write lock을 잡고 바꾼다.)
+    @JsonIgnore
+    private volatile boolean closed;
+
+    @JsonIgnore
+    private final AtomicLongArray receivedBits;
+
+    @JsonIgnore
+    private final AtomicInteger receivedCount = new AtomicInteger();
+
+    @JsonIgnore
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    ChunkedUpload(String uploadId, String filename, long totalSize, long chunkSize, Path partFile, FileChannel channel) {
+        this.uploadId = uploadId;
+        this.filename = filename;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) Math.max(1, (totalSize + chunkSize - 1) / chunkSize);
+        this.partFile = partFile;
+        this.channel = channel;
+        this.receivedBits = new AtomicLongArray((chunkCount + 63) / 64);
+    }
+
+    // 0 byte 파일도 chunk 1개(길이 0)로 취급한다.
+    public long chunkOffset(int index) {
+        return index * chunkSize;
+    }
+
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, totalSize - chunkOffset(index));
+    }
+
+    /**
+     * @return 처음 받은 chunk면 true, 이미 받았던 chunk(재전송)면 false
+     */
+    boolean markReceived(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index; // shift는 하위 6bit만 사용한다. (index % 64)
+        while (true) {
+            long current = receivedBits.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (receivedBits.compareAndSet(word, current, current | bit)) {
+                receivedCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public boolean isReceived(int index) {
+        return (receivedBits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    public int getReceivedChunks() {
+        return receivedCount.get();
+    }
+
+    public boolean isComplete() {
+        return receivedCount.get() == chunkCount;
+    }
+
+    public List<Integer> getMissingChunks() {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < chunkCount && missing.size() < MAX_REPORTED_MISSING_CHUNKS; i++) {
+            if (!isReceived(i)) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    void setChannel(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    void markClosed() {
+        closed = true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * 이어받기 가능한 조각(chunk) 업로드 API
+ * 1. POST   /file/uploads?filename=big.iso&size=1073741824  --> uploadId 발급
+ * 2. PUT    /file/uploads/{uploadId}/chunks/{index}         --> chunk 업로드 (순서 상관 없음, 동시에 보내도 됨)
+ * 3. GET    /file/uploads/{uploadId}                        --> 받은 chunk 수, 빠진 chunk 목록
+ * 4. POST   /file/uploads/{uploadId}/complete               --> 파일 완성
+ *    DELETE /file/uploads/{uploadId}                        --> 업로드 취소
+ */
+@Controller // ResponseEntity를 리턴하는 Handler는 @RestController가 필요없다.
+@RequestMapping("/file/uploads")
+public class ChunkedUploadController {
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<ChunkedUpload> initUpload(@RequestParam String filename,
+                                                    @RequestParam long size,
+                                                    @RequestParam(required = false) Long chunkSize) throws IOException {
+        ChunkedUpload upload = chunkedUploadService.init(filename, size, chunkSize);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQuery(null)
+                .path("/{uploadId}")
+                .buildAndExpand(upload.getUploadId())
+                .toUri();
+        return ResponseEntity.created(location).body(upload);
+    }
+
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ResponseEntity<Void> uploadChunk(@PathVariable String uploadId,
+                                            @PathVariable int index,
+                                            HttpServletRequest request) throws IOException {
+        chunkedUploadService.writeChunk(uploadId, index, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ChunkedUpload> uploadStatus(@PathVariable String uploadId) {
+        return ResponseEntity.ok(chunkedUploadService.get(uploadId));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<StoredFile> completeUpload(@PathVariable String uploadId) throws IOException {
+        return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.complete(uploadId));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String uploadId) throws IOException {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> uploadNotFound(UploadNotFoundException exception) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(exception.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> invalidChunk(IllegalArgumentException exception) {
+        return ResponseEntity.badRequest().body(exception.getMessage());
+    }
+
+    // 아직 받지 못한 chunk가 있는데 complete 요청한 경우
+    @ExceptionHandler
+    public ResponseEntity<String> incompleteUpload(IllegalStateException exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
+
+    // 열린 업로드가 너무 많거나 미리 잡아둔 크기가 한도를 넘은 경우 --> 다른 업로드가 끝난 뒤 다시 시도
+    @ExceptionHandler
+    public ResponseEntity<String> uploadLimitExceeded(UploadLimitExceededException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(exception.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> uploadSizeExceeded(MaxUploadSizeExceededException exception) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(exception.getMessage());
+    }
+}
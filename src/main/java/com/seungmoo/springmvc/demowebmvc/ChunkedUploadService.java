@@ -0,0 +1,319 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 이어받기 가능한 조각(chunk) 업로드
+ * 1. init : 전체 크기만큼 미리 잡아둔(preallocate) 파일을 만든다.
+ * 2. chunk N 업로드 : 파일의 N * chunkSize 위치에 positional write (FileChannel.write(buffer, position))
+ *    --> chunk 마다 쓰는 위치가 겹치지 않으므로 여러 chunk를 동시에 받아도 된다.
+ * 3. complete : 모든 chunk를 받았으면 FileStore로 옮긴다. (옮기다 실패하면 part 파일은 그대로 두므로 complete만 다시 하면 된다.)
+ * 중간에 연결이 끊기면 status로 빠진 chunk를 확인해서 그 chunk만 다시 보내면 된다.
+ * 동시에 열어둘 수 있는 업로드 수와 미리 잡아두는 전체 크기는 제한한다. (넘으면 UploadLimitExceededException)
+ * expire-after 동안 chunk가 오지 않은 업로드는 expire-interval마다 정리한다.
+ * 업로드 상태(받은 chunk, 파일 이름)는 memory에만 있으므로 기동할 때 남아있는 part 파일은 이어서 받을 수 없다. --> 지운다.
+ */
+@Slf4j
+@Component
+public class ChunkedUploadService implements DisposableBean {
+
+    private final FileStore fileStore;
+    private final Path workDir;
+    private final int bufferSize;
+    private final long defaultChunkSize;
+    private final long maxChunkSize;
+    private final Duration expireAfter;
+    private final int maxUploads;
+    private final long maxTotalSize;
+
+    private final ConcurrentMap<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    // 열려있는 업로드 수, part 파일로 잡아둔 byte 수 (init에서 늘리고 complete/abort/expire에서 줄인다.)
+    private final AtomicInteger openUploads = new AtomicInteger();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final ScheduledExecutorService expirer;
+
+    @Autowired
+    public ChunkedUploadService(FileStore fileStore,
+                                @Value("${file.upload.dir:${java.io.tmpdir}/demo-web-mvc/upload}/.chunked") String workDir,
+                                @Value("${file.upload.chunk-size:64KB}") DataSize bufferSize,
+                                @Value("${file.upload.chunked.default-chunk-size:8MB}") DataSize defaultChunkSize,
+                                @Value("${file.upload.chunked.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                @Value("${file.upload.chunked.expire-after:24h}") Duration expireAfter,
+                                @Value("${file.upload.chunked.expire-interval:10m}") Duration expireInterval,
+                                @Value("${file.upload.chunked.max-uploads:100}") int maxUploads,
+                                @Value("${file.upload.chunked.max-total-size:50GB}") DataSize maxTotalSize) throws IOException {
+        this.fileStore = fileStore;
+        this.workDir = Files.createDirectories(Paths.get(workDir));
+        this.bufferSize = (int) bufferSize.toBytes();
+        this.defaultChunkSize = defaultChunkSize.toBytes();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.expireAfter = expireAfter;
+        this.maxUploads = maxUploads;
+        this.maxTotalSize = maxTotalSize.toBytes();
+        deleteStaleParts();
+
+        this.expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chunked-upload-expirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = expireInterval.toMillis();
+        expirer.scheduleWithFixedDelay(this::expireIdleUploads, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public ChunkedUpload init(String filename, long totalSize, Long chunkSize) throws IOException {
+        String name = AbstractFileStore.cleanFilename(filename);
+        long size = chunkSize != null ? chunkSize : defaultChunkSize;
+        if (totalSize < 0 || size <= 0 || size > maxChunkSize) {
+            throw new IllegalArgumentException("Invalid size : totalSize=" + totalSize + ", chunkSize=" + size);
+        }
+        if (totalSize > fileStore.getMaxSize()) {
+            throw new MaxUploadSizeExceededException(fileStore.getMaxSize());
+        }
+        if ((totalSize + size - 1) / size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many chunks, use a larger chunkSize");
+        }
+        expireIdleUploads();
+        reserve(totalSize);
+
+        String uploadId = UUID.randomUUID().toString();
+        Path partFile = workDir.resolve(uploadId + ".part");
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(partFile.toFile(), "rw");
+            file.setLength(totalSize);
+        } catch (IOException ex) {
+            if (file != null) {
+                file.close();
+            }
+            Files.deleteIfExists(partFile);
+            release(totalSize);
+            throw ex;
+        }
+
+        ChunkedUpload upload = new ChunkedUpload(uploadId, name, totalSize, size, partFile, file.getChannel());
+        uploads.put(uploadId, upload);
+        log.info("chunked upload started : {} ({}, {} bytes, {} chunks)", uploadId, name, totalSize, upload.getChunkCount());
+        return upload;
+    }
+
+    /**
+     * @param contentLength Content-Length, 모르면 -1
+     */
+    public void writeChunk(String uploadId, int index, InputStream in, long contentLength) throws IOException {
+        ChunkedUpload upload = get(uploadId);
+        if (index < 0 || index >= upload.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index out of range : " + index);
+        }
+        long expectedLength = upload.chunkLength(index);
+        if (contentLength >= 0 && contentLength != expectedLength) {
+            throw new IllegalArgumentException("Chunk " + index + " must be " + expectedLength + " bytes");
+        }
+
+        // chunk끼리는 동시에 써도 되고, complete/abort는 쓰는 중인 chunk가 끝날 때까지 기다린다.
+        Lock lock = upload.getLock().readLock();
+        lock.lock();
+        try {
+            if (upload.isClosed()) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            // buffer 하나로 읽으면서 chunk 위치에 바로 쓴다.
+            FileChannel channel = upload.getChannel();
+            ReadableByteChannel source = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, Math.max(expectedLength, 1)));
+            long position = upload.chunkOffset(index);
+            long written = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                written += buffer.remaining();
+                if (written > expectedLength) {
+                    throw new IllegalArgumentException("Chunk " + index + " must be " + expectedLength + " bytes");
+                }
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            if (written != expectedLength) {
+                throw new IllegalArgumentException("Chunk " + index + " is incomplete : " + written + "/" + expectedLength + " bytes");
+            }
+
+            upload.markReceived(index);
+            upload.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ChunkedUpload get(String uploadId) {
+        ChunkedUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new UploadNotFoundException(uploadId);
+        }
+        return upload;
+    }
+
+    public StoredFile complete(String uploadId) throws IOException {
+        ChunkedUpload upload = get(uploadId);
+        // 쓰는 중인 chunk가 끝날 때까지 기다린다. (그 사이에 channel을 닫으면 chunk 요청이 ClosedChannelException으로 실패한다.)
+        Lock lock = upload.getLock().writeLock();
+        lock.lock();
+        try {
+            // 먼저 들어온 complete/abort가 이미 끝낸 경우
+            if (upload.isClosed()) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            if (!upload.isComplete()) {
+                throw new IllegalStateException("Missing chunks : " + upload.getMissingChunks());
+            }
+            try (FileChannel channel = upload.getChannel()) {
+                channel.force(false);
+            }
+            StoredFile storedFile;
+            try {
+                storedFile = fileStore.store(upload.getFilename(), upload.getPartFile());
+            } catch (IOException | RuntimeException ex) {
+                // 받은 chunk는 그대로 두고 complete만 다시 하면 되도록 part 파일을 다시 연다.
+                reopen(upload, ex);
+                throw ex;
+            }
+            close(upload);
+            return storedFile;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort(String uploadId) throws IOException {
+        ChunkedUpload upload = get(uploadId);
+        Lock lock = upload.getLock().writeLock();
+        lock.lock();
+        try {
+            if (upload.isClosed()) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            close(upload);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getOpenUploads() {
+        return openUploads.get();
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    // 오래 방치된 업로드는 정리한다. (chunk를 쓰는 중이면 다음에 정리한다.)
+    private void expireIdleUploads() {
+        long expireBefore = System.currentTimeMillis() - expireAfter.toMillis();
+        for (ChunkedUpload upload : uploads.values()) {
+            if (upload.getLastAccessTime() >= expireBefore) {
+                continue;
+            }
+            Lock lock = upload.getLock().writeLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!upload.isClosed()) {
+                    close(upload);
+                    log.info("chunked upload expired : {}", upload.getUploadId());
+                }
+            } catch (IOException ex) {
+                log.warn("failed to discard expired upload : " + upload.getUploadId(), ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 이전 실행에서 남은 part 파일 (init에서 전체 크기만큼 잡아두므로 그냥 두면 disk를 차지한다.)
+    private void deleteStaleParts() throws IOException {
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(workDir, "*.part")) {
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+                log.info("stale chunked upload part deleted : {}", part.getFileName());
+            }
+        }
+    }
+
+    private void reserve(long totalSize) {
+        if (openUploads.incrementAndGet() > maxUploads) {
+            openUploads.decrementAndGet();
+            throw new UploadLimitExceededException("Too many open uploads (max " + maxUploads + ")");
+        }
+        while (true) {
+            long reserved = reservedBytes.get();
+            if (reserved + totalSize > maxTotalSize) {
+                openUploads.decrementAndGet();
+                throw new UploadLimitExceededException("Not enough upload space : " + totalSize + " bytes requested, "
+                        + (maxTotalSize - reserved) + " bytes available");
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + totalSize)) {
+                return;
+            }
+        }
+    }
+
+    private void release(long totalSize) {
+        openUploads.decrementAndGet();
+        reservedBytes.addAndGet(-totalSize);
+    }
+
+    // write lock을 잡고 호출한다. 목록에서 빼고 part 파일을 지운다. (FileStore로 옮겼으면 이미 없다.)
+    private void close(ChunkedUpload upload) throws IOException {
+        upload.markClosed();
+        if (uploads.remove(upload.getUploadId(), upload)) {
+            release(upload.getTotalSize());
+        }
+        upload.getChannel().close();
+        Files.deleteIfExists(upload.getPartFile());
+    }
+
+    private void reopen(ChunkedUpload upload, Exception cause) throws IOException {
+        try {
+            upload.setChannel(FileChannel.open(upload.getPartFile(), StandardOpenOption.WRITE));
+        } catch (IOException ex) {
+            // part 파일까지 잃은 경우 --> 이어서 할 수 없으므로 정리한다.
+            cause.addSuppressed(ex);
+            close(upload);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        expirer.shutdownNow();
+    }
+}
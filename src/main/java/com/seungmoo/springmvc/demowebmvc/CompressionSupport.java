@@ -0,0 +1,140 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * 응답 압축 설정 (compression.*)
+ * - 어떤 content type을 압축할지 (jpeg, zip 같이 이미 압축된 형식은 목록에 넣지 않는다.)
+ * - GzipCompressionFilter가 쓰는 Deflater pool
+ *   Deflater는 native(zlib) 메모리를 잡으므로 응답마다 만들지 않고 재사용한다.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "compression")
+public class CompressionSupport {
+
+    private boolean enabled = true;
+
+    // 이보다 작은 응답은 압축하지 않는다.
+    private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+    private List<String> mimeTypes = Arrays.asList(
+            "text/html", "text/xml", "text/plain", "text/css", "text/javascript",
+            "application/javascript", "application/json", "application/x-ndjson", "application/xml");
+
+    // 응답마다 parse 하지 않도록 설정할 때 한 번만 parse 해둔다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private List<MimeType> compressibleTypes = parse(mimeTypes);
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private int deflaterPoolSize = 64;
+
+    @Getter(AccessLevel.NONE)
+    private final Queue<Deflater> deflaterPool = new ConcurrentLinkedQueue<>();
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger pooledDeflaters = new AtomicInteger();
+
+    public void setMimeTypes(List<String> mimeTypes) {
+        this.compressibleTypes = parse(mimeTypes);
+        this.mimeTypes = mimeTypes;
+    }
+
+    public boolean isCompressible(String contentType) {
+        if (!StringUtils.hasText(contentType)) {
+            return false;
+        }
+        MimeType mimeType;
+        try {
+            mimeType = MimeTypeUtils.parseMimeType(contentType);
+        } catch (InvalidMimeTypeException ex) {
+            return false;
+        }
+        for (MimeType candidate : compressibleTypes) {
+            if (candidate.equalsTypeAndSubtype(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Accept-Encoding : gzip, deflate, br;q=0.5 --> q=0 이면 받지 않겠다는 뜻
+    // 이름을 직접 적은 항목이 * 보다 우선한다. (gzip;q=0, * 이면 gzip은 받지 않는다.)
+    public static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double wildcard = -1;
+        for (String token : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            String[] parts = StringUtils.tokenizeToStringArray(token, ";");
+            if (parts.length == 0) {
+                continue;
+            }
+            if (parts[0].equalsIgnoreCase(encoding)) {
+                return quality(parts) > 0;
+            }
+            if (parts[0].equals("*")) {
+                wildcard = quality(parts);
+            }
+        }
+        return wildcard > 0;
+    }
+
+    // q가 없으면 1, 읽을 수 없으면 0 (받지 않는 것으로 본다.)
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parts[i].substring(2));
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static List<MimeType> parse(List<String> mimeTypes) {
+        return mimeTypes.stream().map(MimeTypeUtils::parseMimeType).collect(Collectors.toList());
+    }
+
+    // gzip header/trailer는 직접 쓰므로 raw deflate(nowrap)로 만든다.
+    Deflater borrowDeflater() {
+        Deflater deflater = deflaterPool.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (pooledDeflaters.incrementAndGet() <= deflaterPoolSize) {
+            deflaterPool.offer(deflater);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 내용(SHA-256) 기준으로 저장하는 저장소 (file.store.type=content-addressed, 기본값)
+ * - 파일 내용은 blobs/{hash 앞 2자리}/{hash} 에 한번만 저장한다. 같은 내용이 다시 올라오면 임시 파일만 지우고 끝 (dedup)
+ * - 파일 이름 --> hash 는 index 파일에 append 해두고, 기동할 때 다시 읽어서 메모리(map)에 올린다.
+ *   index record : [이름 길이 2byte][이름 UTF-8][hash 32byte][크기 8byte]
+ *   같은 이름이 여러번 기록되면 마지막 record가 이긴다. 오래된 record가 많이 쌓이면 기동할 때 index를 다시 쓴다. (compaction)
+ * - blob마다 가리키는 이름 수(reference count)를 메모리에 두고, 덮어써서 0이 되면 blob을 지운다.
+ *   새 record가 index에 commit(fsync) 된 뒤에 지우므로 중간에 죽어도 index가 없는 blob을 가리키지 않는다.
+ *   반대로 blob만 남고 index에 쓰지 못한 채 죽은 경우는 기동할 때 아무도 가리키지 않는 blob을 훑어서 지운다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "file.store.type", havingValue = "content-addressed", matchIfMissing = true)
+public class ContentAddressedFileStore extends AbstractFileStore implements DisposableBean {
+
+    private static final int HASH_BYTES = 32;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private final Path blobDir;
+    private final Path indexFile;
+    private final ConcurrentMap<String, IndexEntry> index = new ConcurrentHashMap<>();
+    // hash --> 그 blob을 가리키는 이름 수 (0이 되면 map에서 빠지고 blob을 지운다.)
+    private final ConcurrentMap<String, Integer> references = new ConcurrentHashMap<>();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder collected = new LongAdder();
+
+    // index append는 한번에 하나씩
+    // synchronized 안에서 force(fsync)를 기다리면 virtual thread가 carrier thread를 붙잡고 있으므로(pinning) Lock을 쓴다.
+    private final Lock indexLock = new ReentrantLock();
+    private FileChannel indexChannel;
+
+    @Autowired
+    public ContentAddressedFileStore(@Value("${file.upload.dir:${java.io.tmpdir}/demo-web-mvc/upload}") String uploadDir,
+                                     @Value("${file.upload.chunk-size:64KB}") DataSize chunkSize,
+                                     @Value("${file.upload.max-size:10GB}") DataSize maxSize) throws IOException {
+        super(Paths.get(uploadDir), (int) chunkSize.toBytes(), maxSize.toBytes());
+        this.blobDir = Files.createDirectories(storeDir.resolve("blobs"));
+        this.indexFile = storeDir.resolve("index");
+
+        int records = loadIndex();
+        if (records > 1024 && records > index.size() * 2) {
+            compactIndex();
+        }
+        index.values().forEach(entry -> references.merge(entry.sha256, 1, Integer::sum));
+        sweepBlobs();
+        this.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("content addressed file store : {} names, {} index records", index.size(), records);
+    }
+
+    @Override
+    protected StoredFile place(String name, Path source, long size, String sha256) throws IOException {
+        IndexEntry entry = new IndexEntry(sha256, size);
+        ByteBuffer record = encode(name, entry);
+
+        // blob을 확인하기 전에 reference를 먼저 잡는다. --> 다른 이름이 덮어쓰면서 이 blob을 지우지 못한다.
+        references.merge(sha256, 1, Integer::sum);
+        Path blob = blobPath(sha256);
+        IndexEntry previous;
+        try {
+            if (Files.exists(blob)) {
+                Files.delete(source);
+                deduplicated.increment();
+            } else {
+                Files.createDirectories(blob.getParent());
+                try {
+                    move(source, blob);
+                } catch (FileAlreadyExistsException ex) {
+                    // 같은 내용이 동시에 올라온 경우
+                    Files.delete(source);
+                    deduplicated.increment();
+                }
+            }
+
+            indexLock.lock();
+            try {
+                indexChannel.write(record);
+                indexChannel.force(false);
+                previous = index.put(name, entry);
+            } finally {
+                indexLock.unlock();
+            }
+        } catch (IOException | RuntimeException ex) {
+            release(sha256);
+            throw ex;
+        }
+        // 덮어쓴 예전 내용
+        if (previous != null) {
+            release(previous.sha256);
+        }
+        return new StoredFile(name, blob, size, sha256);
+    }
+
+    @Override
+    public Optional<StoredFile> find(String filename) {
+        IndexEntry entry = index.get(filename);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new StoredFile(filename, blobPath(entry.sha256), entry.size, entry.sha256));
+    }
+
+    // 이미 있는 blob을 재사용한 횟수
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    // 가리키는 이름이 없어져서 지운 blob 수
+    public long getCollectedCount() {
+        return collected.sum();
+    }
+
+    // reference가 0이 되면 blob을 지운다. 다시 잡는 쪽(place)과 겹치지 않도록 map의 lock 안에서 지운다.
+    private void release(String sha256) {
+        references.computeIfPresent(sha256, (hash, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            deleteBlob(blobPath(hash));
+            return null;
+        });
+    }
+
+    private void deleteBlob(Path blob) {
+        try {
+            if (Files.deleteIfExists(blob)) {
+                collected.increment();
+            }
+        } catch (IOException ex) {
+            // 다음 기동 때 sweep에서 다시 지운다.
+            log.warn("failed to delete unreferenced blob {}", blob, ex);
+        }
+    }
+
+    // 기동할 때 한번, index에서 아무도 가리키지 않는 blob을 지운다. (index에 쓰기 전에 죽은 경우)
+    private void sweepBlobs() throws IOException {
+        try (Stream<Path> blobs = Files.walk(blobDir, 2)) {
+            blobs.filter(Files::isRegularFile)
+                    .filter(blob -> !references.containsKey(blob.getFileName().toString()))
+                    .forEach(this::deleteBlob);
+        }
+        if (collected.sum() > 0) {
+            log.info("removed {} unreferenced blobs", collected.sum());
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        indexLock.lock();
+        try {
+            indexChannel.close();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private Path blobPath(String sha256) {
+        return blobDir.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private int loadIndex() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= 2) {
+                int start = buffer.position();
+                int nameLength = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < nameLength + HASH_BYTES + 8) {
+                    // 쓰다가 죽은 마지막 record는 잘라낸다.
+                    buffer.position(start);
+                    break;
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                byte[] hash = new byte[HASH_BYTES];
+                buffer.get(hash);
+                long size = buffer.getLong();
+                index.put(new String(name, StandardCharsets.UTF_8), new IndexEntry(toHex(hash), size));
+                records++;
+            }
+            if (buffer.hasRemaining()) {
+                log.warn("truncating incomplete index record at {}", buffer.position());
+                channel.truncate(buffer.position());
+            }
+        }
+        return records;
+    }
+
+    private void compactIndex() throws IOException {
+        Path temp = storeDir.resolve("index.compact");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                channel.write(encode(entry.getKey(), entry.getValue()));
+            }
+            channel.force(false);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE);
+        log.info("compacted file store index : {} names", index.size());
+    }
+
+    private static ByteBuffer encode(String name, IndexEntry entry) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("File name is too long");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + nameBytes.length + HASH_BYTES + 8);
+        buffer.putShort((short) nameBytes.length);
+        buffer.put(nameBytes);
+        for (int i = 0; i < HASH_BYTES; i++) {
+            buffer.put((byte) Integer.parseInt(entry.sha256.substring(i * 2, i * 2 + 2), 16));
+        }
+        buffer.putLong(entry.size);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static class IndexEntry {
+        final String sha256;
+        final long size;
+
+        IndexEntry(String sha256, long size) {
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+}
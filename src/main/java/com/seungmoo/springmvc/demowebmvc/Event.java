@@ -6,11 +6,21 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.time.LocalDate;
 
+// Session 저장소(SessionStore)에 넣을 때는 field 값만 binary로 쓴다. (Externalizable)
+// 기본 Java 직렬화는 class 정보, field 이름까지 같이 써서 훨씬 크다.
 @Getter
 @Setter
-public class Event {
+public class Event implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
 
     // 스프링 @Validated Annotation을 위한 Grouping
     interface ValidateLimit {}
@@ -31,4 +41,39 @@ public class Event {
     // formatter
     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) // (pattern = "yyyy-MM-dd") --> 패턴처리도 가능하다.
     private LocalDate startDate;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        writeTo(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        readFrom(in);
+    }
+
+    // null인 field는 flag bit로 표시하고 값은 쓰지 않는다.
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte((id != null ? 1 : 0) | (name != null ? 2 : 0) | (limit != null ? 4 : 0) | (startDate != null ? 8 : 0));
+        if (id != null) {
+            out.writeInt(id);
+        }
+        if (name != null) {
+            out.writeUTF(name);
+        }
+        if (limit != null) {
+            out.writeInt(limit);
+        }
+        if (startDate != null) {
+            out.writeLong(startDate.toEpochDay());
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        int present = in.readByte();
+        id = (present & 1) != 0 ? in.readInt() : null;
+        name = (present & 2) != 0 ? in.readUTF() : null;
+        limit = (present & 4) != 0 ? in.readInt() : null;
+        startDate = (present & 8) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
 }
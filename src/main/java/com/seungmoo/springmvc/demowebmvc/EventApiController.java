@@ -1,6 +1,17 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
@@ -8,7 +19,21 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import javax.naming.Binding;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 //@RestController
@@ -16,10 +41,34 @@ import javax.validation.Valid;
 @RequestMapping("/api/events")
 public class EventApiController {
 
+    // 한 줄에 JSON 하나 (newline delimited JSON)
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // @Validated가 내부적으로 쓰는 Bean Validation validator, 직접 꺼내서 한 건씩 검증한다.
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    // batch 요청에서 commit을 기다리기 전에 넣어두는 최대 건수 (writer가 한번에 묶는 건수와 같게)
+    @Value("${event.store.commit.max-batch:256}")
+    private int batchWindow;
+
+    @Autowired
+    private EventTaskExecutor eventTaskExecutor;
+
+    // ingest 응답에 담을 오류 메시지 최대 개수
+    private static final int MAX_INGEST_ERRORS = 100;
+
     // REST API의 경우에는 ExceptionHandler에서 ResponseEntity를 return (주로 이렇게 쓴다.)
     // client에 error 정보를 주기 위함
+    // 처리할 예외 type을 parameter(또는 annotation)로 알려줘야 한다. (없으면 예외가 났을 때 handler를 찾다가 실패한다.)
     @ExceptionHandler
-    public ResponseEntity errorHandler() {
+    public ResponseEntity errorHandler(EventException exception) {
         return ResponseEntity.badRequest().body("can't create event as ....");
     }
 
@@ -28,7 +77,7 @@ public class EventApiController {
     // response 값을 HttpMessageConverter를 사용해서 response Body message로 보낼 때 사용, @RestController 사용 시 자동으로 모든 핸들러 메소드에 적용
     // @ResponseBody는 가장 기본적으로 RequestHeader에서 Accept header를 본다.
     // @ResponseBody // @RestController 사용 시 생략
-    public ResponseEntity<Event> createEvent(
+    public CompletableFuture<ResponseEntity<Event>> createEvent(
             // HttpEntity를 통해 request header,body를 둘다 받을 수 있다.
             // BUT!! HttpEntity는 @Valid, @Validated 못쓴다.
             //@RequestParam HttpEntity<Event> request
@@ -48,12 +97,276 @@ public class EventApiController {
         // bindingResult를 통해 binding error 났을 때 서버에서 좀 더 custom하여 response를 return 할 수 있다.
         if(bindingResult.hasErrors()) {
             bindingResult.getAllErrors().forEach(e -> log.error(e.getDefaultMessage()));
-            return ResponseEntity.badRequest().build();
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
         }
 
-        ResponseEntity<Event> responseEntity = new ResponseEntity(request, HttpStatus.OK);
-        return  responseEntity;
+        // 저장소에 넣고 id가 붙은 Event를 돌려준다.
+        // group commit writer가 로그에 쓰고 나면 응답한다. 기다리는 동안 Tomcat thread는 반납한다. (servlet async)
+        return eventRepository.createAsync(request)
+                .thenApply(event -> new ResponseEntity<>(event, HttpStatus.OK));
         //return ResponseEntity.ok(request.getBody());
     }
 
+    // 여러 Event를 한번에 등록 (JSON 배열 or NDJSON)
+    // @RequestBody List<Event>는 body 전체를 list로 만든 다음에 handler가 호출되므로,
+    // parser로 한 건씩 읽어서 검증하고 결과는 commit 될 때마다 써내려간다. --> 건수가 많아도 메모리에 쌓이지 않는다. (최대 batchWindow개)
+    // 응답은 요청과 같은 형식 (JSON 배열 or NDJSON)으로 건별 결과를 준다.
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public void createEvents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean ndjson = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE));
+        response.setContentType(ndjson ? APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+
+        JsonFactory jsonFactory = objectMapper.getFactory();
+        try (JsonParser parser = jsonFactory.createParser(request.getInputStream());
+             JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+            // 응답 stream은 container가 닫는다.
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (ndjson) {
+                // 기본값은 root level 값 사이에 공백을 넣는다. --> 줄바꿈은 직접 쓴다.
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartArray();
+            }
+
+            int index = 0;
+            // 아직 결과를 쓰지 않은 item (commit을 한 건씩 기다리지 않고 batchWindow개마다 한 번만 기다린다.)
+            List<BatchItem> window = new ArrayList<>(Math.min(batchWindow, 1024));
+            try {
+                // [ {...}, {...} ] 이면 배열 안으로 들어가고, NDJSON이면 root level 값을 차례로 읽는다.
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    // item이 끝나면 돌아올 위치 (START_OBJECT를 읽으면 context는 이미 item 안이다.)
+                    JsonStreamContext itemParent = token.isStructStart()
+                            ? parser.getParsingContext().getParent() : parser.getParsingContext();
+                    BatchItem item = new BatchItem(index);
+                    try {
+                        if (token != JsonToken.START_OBJECT) {
+                            // null, 숫자, 배열 등 --> EventNdjsonReader와 같이 이 item만 invalid (readValue는 null을 그대로 돌려준다.)
+                            parser.skipChildren();
+                            throw MismatchedInputException.from(parser, Event.class,
+                                    "Expected an event object but was " + token);
+                        }
+                        item.event = objectMapper.readValue(parser, Event.class);
+                    } catch (MismatchedInputException ex) {
+                        // JSON 형식은 맞는데 값의 type이 다른 경우 ("limit":"abc") --> 이 item만 invalid, 나머지는 계속 읽는다.
+                        skipTo(parser, itemParent);
+                        item.mismatch = ex;
+                    }
+                    if (item.event != null) {
+                        item.violations = validator.validate(item.event, Event.ValidateAll.class);
+                        if (item.violations.isEmpty()) {
+                            // writer queue에 넣기만 한다. (ingest와 같이 writer가 여러 건씩 묶어서 fsync)
+                            item.created = eventRepository.createAsync(item.event);
+                        }
+                    }
+                    window.add(item);
+                    index++;
+                    if (window.size() >= batchWindow) {
+                        writeResults(generator, window, ndjson);
+                    }
+                    token = parser.nextToken();
+                }
+                writeResults(generator, window, ndjson);
+            } catch (JsonProcessingException ex) {
+                // 형식이 깨진 뒤로는 어디서부터 다시 읽어야 할 지 알 수 없으므로 여기서 멈춘다.
+                // 앞에서 읽은 item은 이미 넣었으므로 결과를 먼저 쓴다.
+                writeResults(generator, window, ndjson);
+                log.warn("malformed event at index {} : {}", index, ex.getOriginalMessage());
+                generator.writeStartObject();
+                generator.writeNumberField("index", index);
+                generator.writeStringField("status", "malformed");
+                generator.writeStringField("message", ex.getOriginalMessage());
+                generator.writeEndObject();
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+            }
+
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    // 대량 NDJSON 적재 (수백만 건)
+    // EventNdjsonReader로 token 단위로 읽으면서 한 건씩 검증하고, 건별 결과 대신 집계만 돌려준다. --> 메모리 사용량 일정
+    // ex) curl -H 'Content-Type: application/x-ndjson' --data-binary @events.ndjson http://localhost:8080/api/events/ingest
+    @PostMapping(value = "/ingest", consumes = APPLICATION_NDJSON_VALUE)
+    // 오래 걸리는 작업이므로 전용 thread pool에서 읽는다. (async 시작 후에도 request body는 blocking으로 읽을 수 있다.)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> ingestEvents(HttpServletRequest request) throws IOException {
+        InputStream body = request.getInputStream();
+        return eventTaskExecutor.supply(() -> {
+            try {
+                return ResponseEntity.ok(ingest(body));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private Map<String, Object> ingest(InputStream body) throws IOException {
+        long received = 0;
+        long accepted = 0;
+        long rejected = 0;
+        boolean malformed = false;
+        List<String> errors = new ArrayList<>();
+        CompletableFuture<Event> lastWrite = null;
+
+        try (EventNdjsonReader reader = new EventNdjsonReader(objectMapper.getFactory(), body)) {
+            while (true) {
+                Event event;
+                try {
+                    event = reader.next();
+                } catch (EventNdjsonReader.BindingException ex) {
+                    // type이 맞지 않는 값 --> 이 줄만 버리고 계속
+                    received++;
+                    rejected++;
+                    addError(errors, "line " + reader.getLineNumber() + " : " + ex.getMessage());
+                    continue;
+                } catch (JsonProcessingException ex) {
+                    // JSON 문법 오류 --> 이후는 읽을 수 없다.
+                    malformed = true;
+                    addError(errors, "line " + reader.getLineNumber() + " : " + ex.getOriginalMessage());
+                    break;
+                }
+                if (event == null) {
+                    break;
+                }
+                received++;
+
+                Set<ConstraintViolation<Event>> violations = validator.validate(event, Event.ValidateAll.class);
+                if (violations.isEmpty()) {
+                    // commit을 한 건씩 기다리지 않고 넣기만 한다. (writer가 여러 건씩 묶어서 fsync)
+                    lastWrite = eventRepository.createAsync(event);
+                    accepted++;
+                } else {
+                    rejected++;
+                    for (ConstraintViolation<Event> violation : violations) {
+                        addError(errors, "line " + reader.getLineNumber() + " : " + violation.getPropertyPath() + " " + violation.getMessage());
+                    }
+                }
+            }
+        }
+
+        // 들어온 순서대로 commit 하므로 마지막 것이 끝나면 앞의 것도 모두 끝난 것이다.
+        if (lastWrite != null) {
+            lastWrite.join();
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("received", received);
+        summary.put("accepted", accepted);
+        summary.put("rejected", rejected);
+        summary.put("malformed", malformed);
+        summary.put("errors", errors);
+        return summary;
+    }
+
+    private static void addError(List<String> errors, String error) {
+        if (errors.size() < MAX_INGEST_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    // window에 모인 item의 결과를 순서대로 쓴다.
+    // writer는 들어온 순서대로 commit 하므로 처음 기다리는 한 건이 끝나면 뒤의 것들도 대부분 끝나 있다.
+    private void writeResults(JsonGenerator generator, List<BatchItem> window, boolean ndjson) throws IOException {
+        for (BatchItem item : window) {
+            if (item.mismatch != null) {
+                writeMismatch(generator, item.index, item.mismatch);
+            } else if (item.created != null) {
+                try {
+                    writeResult(generator, item.index, item.created.join(), item.violations);
+                } catch (CompletionException ex) {
+                    // 로그에 쓰지 못한 건 (저장되지 않았다.)
+                    log.error("batch event at index {} was not stored", item.index, ex.getCause());
+                    generator.writeStartObject();
+                    generator.writeNumberField("index", item.index);
+                    generator.writeStringField("status", "failed");
+                    generator.writeStringField("message", String.valueOf(ex.getCause().getMessage()));
+                    generator.writeEndObject();
+                }
+            } else {
+                writeResult(generator, item.index, item.event, item.violations);
+            }
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        }
+        window.clear();
+        // 여기까지의 결과를 client에 내보낸다.
+        generator.flush();
+    }
+
+    // readValue가 실패한 곳에서 item이 끝나는 곳(item을 감싸는 context로 돌아올 때)까지 건너뛴다.
+    private static void skipTo(JsonParser parser, JsonStreamContext itemParent) throws IOException {
+        while (parser.getParsingContext() != itemParent) {
+            if (parser.nextToken() == null) {
+                return;
+            }
+        }
+    }
+
+    private void writeMismatch(JsonGenerator generator, int index, MismatchedInputException ex) throws IOException {
+        StringBuilder field = new StringBuilder();
+        for (JsonMappingException.Reference reference : ex.getPath()) {
+            if (reference.getFieldName() != null) {
+                if (field.length() > 0) {
+                    field.append('.');
+                }
+                field.append(reference.getFieldName());
+            } else if (reference.getIndex() >= 0) {
+                field.append('[').append(reference.getIndex()).append(']');
+            }
+        }
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeStringField("status", "invalid");
+        generator.writeArrayFieldStart("errors");
+        generator.writeStartObject();
+        generator.writeStringField("field", field.toString());
+        generator.writeStringField("message", ex.getOriginalMessage());
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeResult(JsonGenerator generator, int index, Event event,
+                             Set<ConstraintViolation<Event>> violations) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        if (violations.isEmpty()) {
+            generator.writeStringField("status", "created");
+            generator.writeObjectField("event", event);
+        } else {
+            generator.writeStringField("status", "invalid");
+            generator.writeArrayFieldStart("errors");
+            for (ConstraintViolation<Event> violation : violations) {
+                generator.writeStartObject();
+                generator.writeStringField("field", violation.getPropertyPath().toString());
+                generator.writeStringField("message", violation.getMessage());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    // batch 요청의 item 하나 : 형식 오류(mismatch), 검증 오류(violations), 저장 중(created) 중 하나
+    private static class BatchItem {
+        final int index;
+        Event event;
+        Set<ConstraintViolation<Event>> violations;
+        MismatchedInputException mismatch;
+        CompletableFuture<Event> created;
+
+        BatchItem(int index) {
+            this.index = index;
+        }
+    }
+
 }
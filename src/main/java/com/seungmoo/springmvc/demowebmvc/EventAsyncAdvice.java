@@ -0,0 +1,37 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * EventTaskExecutor로 일을 넘기는 Event handler의 예외 처리
+ * EventTaskExecutor가 가득 차서 받지 못한 요청 --> 503 + Retry-After (client가 잠시 후 다시 시도)
+ *
+ * BaseController의 RuntimeException handler(error 화면)보다 먼저 봐야 하므로 우선순위를 높게 준다.
+ * CompletableFuture가 예외로 끝난 경우(CompletionException)도 원인 예외를 보고 찾아온다.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ControllerAdvice(assignableTypes = EventApiController.class)
+public class EventAsyncAdvice {
+
+    @Value("${event.async.retry-after:1s}")
+    private Duration retryAfter;
+
+    @ExceptionHandler
+    public ResponseEntity<String> saturated(RejectedExecutionException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfter.getSeconds())))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body("Too many event requests, try again later");
+    }
+}
@@ -1,5 +1,7 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +13,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -21,6 +24,11 @@ import java.util.TimeZone;
 )
 public class EventController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private EventRepository eventRepository;
+
     @GetMapping("/events")
     @ResponseBody
     public ResponseEntity<String> events(Locale locale, TimeZone timeZone, ZoneId zoneId) {
@@ -100,16 +108,57 @@ public class EventController {
 
     @GetMapping("/events/{id}")
     @ResponseBody
-    public String getAnEvents(@PathVariable("id") int id) {
+    public ResponseEntity<Event> getAnEvents(@PathVariable("id") int id) {
         // @PathVariable("id") int idValue  or  @PathVariable int id  --> 이렇게 사용할 수 있다.
-        return "events " + id;
+        // 저장소에서 id로 바로 찾는다. 없으면 404
+        // memory에서 바로 찾으므로 async(thread pool)로 넘기지 않는다. 넘기는 비용이 찾는 비용보다 크다.
+        return eventRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // startDate 기간 조회, 다음 페이지는 응답의 nextCursor를 cursor로 넘긴다.
+    // ex) /events/by-date?from=2020-10-01&to=2020-10-31&size=20
+    @GetMapping("/events/by-date")
+    @ResponseBody
+    public EventPage getEventsByDate(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size) {
+        return eventRepository.findByStartDateBetween(from, to, cursor, checkPageSize(size));
+    }
+
+    // 이름 prefix 조회 (이름 순서)
+    // ex) /events/by-name?prefix=spring&size=20
+    @GetMapping("/events/by-name")
+    @ResponseBody
+    public EventPage getEventsByName(@RequestParam String prefix,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size) {
+        return eventRepository.findByNamePrefix(prefix, cursor, checkPageSize(size));
+    }
+
+    // 잘못된 cursor, page size
+    @ExceptionHandler
+    public ResponseEntity<String> badRequest(IllegalArgumentException exception) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(exception.getMessage());
+    }
+
+    private static int checkPageSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return size;
     }
 
     @DeleteMapping("/events/{id}")
     @ResponseBody
-    public String removeAnEvents(@PathVariable("id") int id) {
+    public ResponseEntity<Void> removeAnEvents(@PathVariable("id") int id) {
         // @PathVariable("id") int idValue  or  @PathVariable int id  --> 이렇게 사용할 수 있다.
-        return "events " + id;
+        if (!eventRepository.delete(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
     }
 
 }
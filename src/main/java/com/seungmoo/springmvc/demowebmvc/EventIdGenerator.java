@@ -0,0 +1,124 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Event id 발급기 (lock 없음)
+ * - id = [sequence][node] (양수 int)
+ *   node : 인스턴스 번호 (event.id.node), 아래 nodeBits 자리에 들어간다. --> 인스턴스가 여러 대여도 id가 겹치지 않는다.
+ * - sequence는 blockSize개씩 묶어서 stripe(core 수의 2배)에 나눠 두고, 요청 thread는 thread id로 고른 stripe에서 하나씩 CAS로 가져간다.
+ *   공용 counter(AtomicLong)는 blockSize번에 한번만 건드리므로 core가 많아도 서로 기다리지 않는다.
+ * - block은 thread가 아니라 stripe에 붙어 있으므로 thread가 새로 생기거나 없어져도 버려지지 않는다.
+ *   (요청마다 새 thread인 virtual thread, idle timeout으로 thread가 정리되는 pool)
+ *   다 쓰지 못한 block은 재기동할 때만 버려진다. (최대 stripe 수 x blockSize, id 중간이 비는 것은 괜찮다. 순서도 stripe 사이에는 보장하지 않는다.)
+ */
+@Component
+public class EventIdGenerator {
+
+    // block을 새로 가져오는 중인 stripe (sequence는 31bit를 넘지 않으므로 실제 값과 겹치지 않는다.)
+    private static final long REFILLING = -1L;
+    // 이웃한 stripe가 같은 cache line에 들어가지 않도록 8칸(64 byte)씩 띄운다.
+    private static final int STRIPE_SPACING = 8;
+
+    private final int node;
+    private final int nodeBits;
+    private final int blockSize;
+    private final int maxSequence;
+
+    // 아직 아무 stripe도 가져가지 않은 첫번째 sequence (마지막 block의 끝인 maxSequence + 1 까지 가므로 long)
+    private final AtomicLong nextBlock = new AtomicLong(1);
+    // stripe마다 [next(상위 32bit)][end(하위 32bit)], end는 block의 마지막 sequence + 1
+    private final AtomicLongArray stripes;
+    private final int stripeMask;
+
+    @Autowired
+    public EventIdGenerator(@Value("${event.id.node:0}") int node,
+                            @Value("${event.id.node-bits:4}") int nodeBits,
+                            @Value("${event.id.block-size:64}") int blockSize) {
+        if (nodeBits < 0 || nodeBits > 16) {
+            throw new IllegalArgumentException("event.id.node-bits must be between 0 and 16 : " + nodeBits);
+        }
+        if (node < 0 || node >= 1 << nodeBits) {
+            throw new IllegalArgumentException("event.id.node must be between 0 and " + ((1 << nodeBits) - 1) + " : " + node);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("event.id.block-size must be positive : " + blockSize);
+        }
+        this.node = node;
+        this.nodeBits = nodeBits;
+        this.blockSize = blockSize;
+        this.maxSequence = Integer.MAX_VALUE >>> nodeBits;
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = new AtomicLongArray(stripeCount * STRIPE_SPACING);
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public int nextId() {
+        int index = stripeIndex(Thread.currentThread().getId());
+        while (true) {
+            long state = stripes.get(index);
+            if (state == REFILLING) {
+                // 다른 thread가 공용 counter에서 block을 가져오는 중 (AtomicInteger 한번이면 끝난다.)
+                Thread.yield();
+                continue;
+            }
+            long next = state >>> 32;
+            long end = state & 0xFFFFFFFFL;
+            if (next < end) {
+                if (stripes.compareAndSet(index, state, state + (1L << 32))) {
+                    return toId(next);
+                }
+                continue;
+            }
+            // block을 다 썼다. --> 한 thread만 새 block을 가져온다. (동시에 가져와서 하나를 버리는 일이 없도록)
+            if (stripes.compareAndSet(index, state, REFILLING)) {
+                long start;
+                try {
+                    start = claimBlock();
+                } catch (IllegalStateException ex) {
+                    stripes.set(index, state);
+                    throw ex;
+                }
+                stripes.set(index, ((start + 1) << 32) | (start + blockSize));
+                return toId(start);
+            }
+        }
+    }
+
+    private long claimBlock() {
+        while (true) {
+            long start = nextBlock.get();
+            // 남은 sequence가 block 하나보다 적으면 counter를 움직이지 않고 실패한다. (실패할 때마다 counter가 밀려서 넘치지 않도록)
+            if (start > maxSequence - blockSize + 1) {
+                throw new IllegalStateException("Event id space exhausted for node " + node);
+            }
+            if (nextBlock.compareAndSet(start, start + blockSize)) {
+                return start;
+            }
+        }
+    }
+
+    private int stripeIndex(long threadId) {
+        // thread id는 연속된 값이므로 섞어서 stripe에 고르게 나눈다.
+        int hash = (int) (threadId ^ (threadId >>> 32)) * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & stripeMask) * STRIPE_SPACING;
+    }
+
+    private int toId(long sequence) {
+        return ((int) sequence << nodeBits) | node;
+    }
+
+    /**
+     * 이미 쓴 id (로그 replay) 다음부터 발급하도록 한다.
+     */
+    public void advancePast(int id) {
+        long sequence = id >>> nodeBits;
+        nextBlock.accumulateAndGet(sequence + 1, Math::max);
+    }
+}
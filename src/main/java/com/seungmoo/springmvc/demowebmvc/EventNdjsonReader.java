@@ -0,0 +1,116 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * NDJSON(한 줄에 JSON 하나) stream에서 Event를 하나씩 꺼내주는 reader
+ * - ObjectMapper(databind)를 거치지 않고 JsonParser의 token을 직접 읽어서 Event field에 넣는다.
+ *   (field 이름 --> setter reflection, 중간 tree 생성 없음)
+ * - 메모리에는 parser buffer와 지금 읽고 있는 Event 하나만 있다. --> payload가 아무리 커도 일정
+ * - 모르는 field는 skipChildren()으로 건너뛴다.
+ * - 값의 type이 맞지 않으면 그 Event의 끝까지 건너뛰고 BindingException을 던진다. (다음 Event부터 계속 읽을 수 있다.)
+ *   JSON 문법 자체가 깨지면 JsonProcessingException --> 더 이상 읽을 수 없다.
+ */
+public class EventNdjsonReader implements Closeable {
+
+    private final JsonParser parser;
+
+    public EventNdjsonReader(JsonFactory jsonFactory, InputStream in) throws IOException {
+        this.parser = jsonFactory.createParser(in);
+    }
+
+    /**
+     * @return 더 이상 없으면 null
+     */
+    public Event next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            throw new BindingException("Expected an event object but was " + token);
+        }
+
+        Event event = new Event();
+        String error = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            try {
+                switch (field) {
+                    case "id":
+                        event.setId(readInteger(value));
+                        break;
+                    case "name":
+                        event.setName(value == JsonToken.VALUE_NULL ? null : readText(value));
+                        break;
+                    case "limit":
+                        event.setLimit(readInteger(value));
+                        break;
+                    case "startDate":
+                        event.setStartDate(value == JsonToken.VALUE_NULL ? null : LocalDate.parse(readText(value)));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            } catch (BindingException | InputCoercionException | NumberFormatException | DateTimeParseException ex) {
+                // 첫번째 오류만 기억해두고 이 Event의 나머지 field는 계속 읽어서 건너뛴다.
+                if (error == null) {
+                    error = field + " : " + ex.getMessage();
+                }
+                parser.skipChildren();
+            }
+        }
+        if (error != null) {
+            throw new BindingException(error);
+        }
+        return event;
+    }
+
+    // 지금까지 읽은 위치 (오류 메시지용)
+    public long getLineNumber() {
+        return parser.getCurrentLocation().getLineNr();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private Integer readInteger(JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+                return parser.getIntValue();
+            case VALUE_STRING:
+                return Integer.valueOf(parser.getText().trim());
+            default:
+                throw new BindingException("Expected an integer but was " + value);
+        }
+    }
+
+    private String readText(JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_STRING) {
+            throw new BindingException("Expected a string but was " + value);
+        }
+        return parser.getText();
+    }
+
+    // Event 하나를 만들 수 없는 경우, 다음 Event는 계속 읽을 수 있다.
+    public static class BindingException extends IOException {
+        public BindingException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * cursor 방식 페이지 조회 결과
+ * nextCursor를 다음 요청에 그대로 넘기면 이어서 조회한다. (마지막 페이지면 null)
+ * offset 방식과 달리 몇번째 페이지든 index에서 cursor 위치로 바로 찾아가므로 앞 페이지를 건너뛰는 비용이 없다.
+ */
+@Value
+public class EventPage {
+    List<Event> events;
+    String nextCursor;
+}
@@ -0,0 +1,619 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+
+/**
+ * Event 저장소 (원격 DB 없이 메모리 + 로컬 로그 파일)
+ * - id --> Event : ConcurrentHashMap (O(1) 조회)
+ * - (name, id), (startDate, id) : ConcurrentSkipListSet (정렬된 상태로 유지)
+ *   --> 이름 / 이름 prefix 조회, 기간 조회를 O(log n)으로 시작 위치를 찾고 순서대로 읽는다.
+ *   id까지 key에 넣었으므로 (값, id)를 cursor로 써서 다음 페이지를 바로 찾아갈 수 있다.
+ * - 변경 내용은 append-only 로그(events.log)에 memory-mapped buffer로 기록하고, 기동할 때 처음부터 다시 읽어서(replay) 메모리에 올린다.
+ *   쓰기(create, delete)는 GroupCommitWriter가 모아서 한 batch마다 force(fsync) 한 번 하고 나서 완료된다.
+ *   --> 요청마다 fsync 하지 않고도 응답이 나간 변경은 OS가 죽어도 남는다. (event.store.commit.force=false면 page cache까지만)
+ *   log record : [payload 길이 4byte][payload CRC32 4byte][payload]
+ *   payload    : [type 1byte][id 4byte] + PUT이면 [limit 4byte][startDate epochDay 8byte][이름 길이 2byte][이름 UTF-8]
+ *   CRC가 맞지 않는 record(쓰다가 죽은 record)를 만나면 거기까지만 읽는다.
+ * - commit(fsync)이 실패하면 그 batch에서 메모리에 반영한 것을 되돌리고 로그도 batch 시작 위치로 되돌린다. (요청은 실패로 끝난다.)
+ * - 로그에서 지워졌거나 덮어쓴 record(dead record)가 compact.dead-ratio를 넘으면 commit 직후 writer thread에서
+ *   살아있는 Event만 새 로그에 써서 바꾼다. (기동할 때도 같은 기준) --> 로그 파일이 mapping 한계(2GB)까지 계속 커지지 않는다.
+ * - 저장된 Event 객체는 여러 요청이 같이 보므로 꺼내서 수정하지 않는다. (저장할 때 복사해둔다.)
+ */
+@Slf4j
+@Component
+public class EventRepository implements DisposableBean {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_NAME = 0xFFFF;
+
+    private final ConcurrentMap<Integer, Event> events = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<IndexKey<String>> nameIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<IndexKey<LocalDate>> startDateIndex = new ConcurrentSkipListSet<>();
+    private final EventIdGenerator idGenerator;
+    private final GroupCommitWriter<LogWrite, Event> writer;
+    private final boolean force;
+
+    private final Path logFile;
+    private final long segmentSize;
+    private final int compactMinRecords;
+    private final double compactDeadRatio;
+
+    // 로그 쓰기와 index 변경은 한번에 하나씩 (로그 순서 == 메모리 반영 순서)
+    // 평소에는 writer thread만 쓰고, 기동/종료할 때 replay, compact, close와 겹치지 않게 한다.
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    // 로그에 있는 record 수, 지금까지 로그에 쓴 가장 큰 id
+    private int records;
+    private int maxLoggedId;
+    // 마지막으로 commit 된 위치, commit이 실패하면 여기로 되돌린다.
+    private int committedPosition;
+    private int committedRecords;
+    private final List<Undo> uncommitted = new ArrayList<>();
+
+    @Autowired
+    public EventRepository(EventIdGenerator idGenerator,
+                           @Value("${event.store.dir:${java.io.tmpdir}/demo-web-mvc/events}") String storeDir,
+                           @Value("${event.store.segment-size:16MB}") DataSize segmentSize,
+                           @Value("${event.store.commit.queue-size:4096}") int commitQueueSize,
+                           @Value("${event.store.commit.max-batch:256}") int commitMaxBatch,
+                           @Value("${event.store.commit.max-delay:0ms}") Duration commitMaxDelay,
+                           @Value("${event.store.commit.force:true}") boolean force,
+                           @Value("${event.store.compact.min-records:1024}") int compactMinRecords,
+                           @Value("${event.store.compact.dead-ratio:0.5}") double compactDeadRatio) throws IOException {
+        this.idGenerator = idGenerator;
+        this.force = force;
+        this.logFile = Files.createDirectories(Paths.get(storeDir)).resolve("events.log");
+        this.segmentSize = segmentSize.toBytes();
+        this.compactMinRecords = compactMinRecords;
+        this.compactDeadRatio = compactDeadRatio;
+
+        long started = System.nanoTime();
+        this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int records = replay();
+        if (needsCompaction()) {
+            compact();
+        }
+        log.info("event repository : {} events, {} log records replayed in {} ms",
+                events.size(), records, (System.nanoTime() - started) / 1_000_000);
+        this.writer = new GroupCommitWriter<>("event-log-writer", commitQueueSize, commitMaxBatch, commitMaxDelay,
+                this::apply, this::commit);
+    }
+
+    /**
+     * 새 id를 붙여서 저장한다. (넘겨준 객체의 id는 무시)
+     */
+    public Event create(Event event) {
+        return await(createAsync(event));
+    }
+
+    /**
+     * 로그에 commit 되면 완료된다. (여러 건을 넣고 마지막 것만 기다려도 된다. 들어온 순서대로 commit 한다.)
+     */
+    public CompletableFuture<Event> createAsync(Event event) {
+        // id 발급, 복사, 직렬화는 요청 thread에서 (writer thread는 로그에 붙이고 index에 넣는 것만 한다.)
+        Event stored = copy(event);
+        stored.setId(idGenerator.nextId());
+        return writer.submit(new LogWrite(stored.getId(), stored, encodePut(stored)));
+    }
+
+    public Optional<Event> findById(int id) {
+        return Optional.ofNullable(events.get(id));
+    }
+
+    public List<Event> findByName(String name) {
+        List<Event> result = new ArrayList<>();
+        collect(nameIndex.subSet(new IndexKey<>(name, Integer.MIN_VALUE), true, new IndexKey<>(name, Integer.MAX_VALUE), true),
+                Integer.MAX_VALUE, result);
+        return result;
+    }
+
+    /**
+     * 이름이 prefix로 시작하는 Event, 이름 순서 (같은 이름이면 id 순서)
+     * @param cursor 이전 페이지의 nextCursor, 처음이면 null
+     */
+    public EventPage findByNamePrefix(String prefix, String cursor, int size) {
+        checkPageSize(size);
+        IndexKey<String> from = new IndexKey<>(prefix, Integer.MIN_VALUE);
+        if (cursor != null) {
+            IndexKey<String> after = decodeNameCursor(cursor);
+            from = after.compareTo(from) > 0 ? after : from;
+        }
+        NavigableSet<IndexKey<String>> range = nameIndex.tailSet(from, cursor == null);
+        List<Event> result = new ArrayList<>(Math.min(size, 1024));
+        IndexKey<String> last = null;
+        Iterator<IndexKey<String>> iterator = range.iterator();
+        while (iterator.hasNext()) {
+            IndexKey<String> key = iterator.next();
+            if (!key.value.startsWith(prefix)) {
+                // 정렬되어 있으므로 prefix가 다른 이름이 나오면 끝
+                return new EventPage(result, null);
+            }
+            if (result.size() == size) {
+                return new EventPage(result, encodeCursor(last.id, last.value));
+            }
+            Event event = events.get(key.id);
+            if (event != null) {
+                result.add(event);
+                last = key;
+            }
+        }
+        return new EventPage(result, null);
+    }
+
+    /**
+     * startDate가 from 이상 to 이하인 Event, startDate 순서 (같은 날짜면 id 순서)
+     * @param cursor 이전 페이지의 nextCursor, 처음이면 null
+     */
+    public EventPage findByStartDateBetween(LocalDate from, LocalDate to, String cursor, int size) {
+        checkPageSize(size);
+        IndexKey<LocalDate> start = new IndexKey<>(from, Integer.MIN_VALUE);
+        IndexKey<LocalDate> end = new IndexKey<>(to, Integer.MAX_VALUE);
+        if (cursor != null) {
+            IndexKey<LocalDate> after = decodeDateCursor(cursor);
+            start = after.compareTo(start) > 0 ? after : start;
+        }
+        if (start.compareTo(end) > 0) {
+            return new EventPage(Collections.emptyList(), null);
+        }
+        NavigableSet<IndexKey<LocalDate>> range = startDateIndex.subSet(start, cursor == null, end, true);
+        List<Event> result = new ArrayList<>(Math.min(size, 1024));
+        IndexKey<LocalDate> last = collect(range, size, result);
+        return new EventPage(result, last == null ? null : encodeCursor(last.id, Long.toString(last.value.toEpochDay())));
+    }
+
+    // 0이면 한 건도 담지 못해서 다음 cursor를 만들 수 없다.
+    private static void checkPageSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Page size must be positive : " + size);
+        }
+    }
+
+    // size개를 채우고도 더 남아있으면 마지막으로 담은 key를 리턴 (다음 cursor), 아니면 null
+    private <T extends Comparable<? super T>> IndexKey<T> collect(NavigableSet<IndexKey<T>> range, int size, List<Event> result) {
+        IndexKey<T> last = null;
+        for (IndexKey<T> key : range) {
+            if (result.size() == size) {
+                return last;
+            }
+            // index와 map 사이에 삭제된 경우는 건너뛴다.
+            Event event = events.get(key.id);
+            if (event != null) {
+                result.add(event);
+                last = key;
+            }
+        }
+        return null;
+    }
+
+    public boolean delete(int id) {
+        return await(writer.submit(new LogWrite(id, null, null))) != null;
+    }
+
+    public int count() {
+        return events.size();
+    }
+
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        // queue에 남은 쓰기까지 commit 하고 닫는다.
+        writer.close();
+        synchronized (writeLock) {
+            mapped.force();
+            channel.close();
+        }
+    }
+
+    private void index(Event event) {
+        Event previous = events.put(event.getId(), event);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (event.getName() != null) {
+            nameIndex.add(new IndexKey<>(event.getName(), event.getId()));
+        }
+        if (event.getStartDate() != null) {
+            startDateIndex.add(new IndexKey<>(event.getStartDate(), event.getId()));
+        }
+    }
+
+    private void unindex(Event event) {
+        if (event.getName() != null) {
+            nameIndex.remove(new IndexKey<>(event.getName(), event.getId()));
+        }
+        if (event.getStartDate() != null) {
+            startDateIndex.remove(new IndexKey<>(event.getStartDate(), event.getId()));
+        }
+    }
+
+    // writer thread에서 한 건씩 : PUT이면 저장한 Event, DELETE면 지운 Event(없었으면 null)
+    private Event apply(LogWrite write) {
+        synchronized (writeLock) {
+            if (write.event != null) {
+                Event previous = events.get(write.id);
+                append(write.id, write.record);
+                index(write.event);
+                uncommitted.add(new Undo(write.id, write.event, previous));
+                return write.event;
+            }
+            Event removed = events.get(write.id);
+            if (removed == null) {
+                return null;
+            }
+            append(write.id, ByteBuffer.allocate(5).put(DELETE).putInt(write.id));
+            unindex(removed);
+            events.remove(write.id);
+            uncommitted.add(new Undo(write.id, null, removed));
+            return removed;
+        }
+    }
+
+    // batch 하나를 다 쓰고 나서 한 번
+    private void commit() {
+        synchronized (writeLock) {
+            try {
+                if (force) {
+                    sync();
+                }
+            } catch (Exception ex) {
+                // force()는 IOException을 선언하지 않고 던질 수 있다.
+                rollback();
+                throw ex instanceof RuntimeException ? (RuntimeException) ex
+                        : new IllegalStateException("Failed to commit event log : " + logFile, ex);
+            }
+            uncommitted.clear();
+            committedPosition = mapped.position();
+            committedRecords = records;
+            if (needsCompaction()) {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    log.warn("failed to compact event log {}", logFile, ex);
+                }
+            }
+        }
+    }
+
+    void sync() {
+        mapped.force();
+    }
+
+    // commit 되지 않은 batch를 뒤에서부터 되돌린다. (응답은 실패로 나가므로 client가 본 상태와 같아진다.)
+    private void rollback() {
+        for (int i = uncommitted.size() - 1; i >= 0; i--) {
+            Undo undo = uncommitted.get(i);
+            if (undo.applied != null) {
+                unindex(undo.applied);
+                events.remove(undo.id);
+            }
+            if (undo.previous != null) {
+                index(undo.previous);
+            }
+        }
+        log.warn("rolled back {} uncommitted event log writes", uncommitted.size());
+        uncommitted.clear();
+        // 일부가 디스크에 써졌더라도 다시 읽히지 않게 0으로 지운다.
+        for (int i = committedPosition; i < mapped.position(); i++) {
+            mapped.put(i, (byte) 0);
+        }
+        mapped.position(committedPosition);
+        records = committedRecords;
+    }
+
+    private boolean needsCompaction() {
+        return records >= compactMinRecords && records - events.size() > records * compactDeadRatio;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private void append(int id, ByteBuffer payload) {
+        payload.flip();
+        int length = payload.remaining();
+        if (mapped.remaining() < RECORD_HEADER_BYTES + length) {
+            grow(RECORD_HEADER_BYTES + length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        mapped.putInt(length).putInt((int) crc.getValue()).put(payload);
+        records++;
+        maxLoggedId = Math.max(maxLoggedId, id);
+    }
+
+    // 파일 전체를 다시 map 한다. (예전 mapping은 GC 될 때 풀린다.)
+    private void grow(int needed) {
+        int position = mapped.position();
+        long capacity = Math.max(mapped.capacity() + segmentSize, (long) position + needed);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Event log is too large : " + logFile);
+        }
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to grow event log : " + logFile, ex);
+        }
+        mapped.position(position);
+    }
+
+    private int replay() throws IOException {
+        long size = Math.max(channel.size(), segmentSize);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Event log is too large : " + logFile);
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        int records = 0;
+        int maxId = 0;
+        CRC32 crc = new CRC32();
+        while (mapped.remaining() >= RECORD_HEADER_BYTES) {
+            int start = mapped.position();
+            int length = mapped.getInt();
+            int checksum = mapped.getInt();
+            if (length <= 0 || length > mapped.remaining()) {
+                mapped.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            mapped.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                mapped.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte type = record.get();
+            int id = record.getInt();
+            if (type == PUT) {
+                index(decodePut(id, record));
+            } else {
+                Event removed = events.remove(id);
+                if (removed != null) {
+                    unindex(removed);
+                }
+            }
+            maxId = Math.max(maxId, id);
+            records++;
+        }
+        idGenerator.advancePast(maxId);
+        this.records = records;
+        this.maxLoggedId = maxId;
+
+        // 쓰다가 죽은 record가 남아있으면 지운다. (이 위치부터 다시 쓰므로 나중에 다시 읽히지 않도록)
+        // 0이 4KB 이상 이어지면 그 뒤는 한번도 쓰지 않은 영역이다.
+        int position = mapped.position();
+        boolean dirty = false;
+        int zeros = 0;
+        for (int i = position; i < mapped.limit() && zeros < 4096; i++) {
+            if (mapped.get(i) != 0) {
+                dirty = true;
+                zeros = 0;
+                mapped.put(i, (byte) 0);
+            } else {
+                zeros++;
+            }
+        }
+        if (dirty) {
+            log.warn("discarded incomplete event log record at {}", position);
+        }
+        committedPosition = position;
+        committedRecords = records;
+        return records;
+    }
+
+    // 살아있는 Event만 새 파일에 쓰고 바꿔치기 한다. (writeLock을 잡고, commit 된 뒤에만 부른다.)
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling("events.log.compact");
+        int written = 0;
+        try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            // 이름이 가장 긴 record(64KB)도 들어가는 크기
+            ByteBuffer buffer = ByteBuffer.allocate(128 * 1024);
+            for (Event event : events.values()) {
+                writeRecord(compacted, buffer, crc, encodePut(event));
+                written++;
+            }
+            // 가장 큰 id가 지워진 Event였으면 다시 열 때 그 id를 또 발급하지 않도록 DELETE를 남긴다.
+            if (maxLoggedId > 0 && !events.containsKey(maxLoggedId)) {
+                writeRecord(compacted, buffer, crc, ByteBuffer.allocate(5).put(DELETE).putInt(maxLoggedId));
+                written++;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                compacted.write(buffer);
+            }
+            compacted.force(false);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        channel.close();
+        try {
+            Files.move(temp, logFile, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size() + segmentSize;
+            int position = (int) channel.size();
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.position(position);
+            committedPosition = position;
+        } catch (IOException ex) {
+            // 기존 channel은 이미 닫혔으므로 더 쓸 수 없다.
+            throw new IllegalStateException("Failed to reopen compacted event log : " + logFile, ex);
+        }
+        log.info("compacted event log : {} events, {} records --> {}", events.size(), records, written);
+        records = written;
+        committedRecords = written;
+    }
+
+    private static void writeRecord(FileChannel channel, ByteBuffer buffer, CRC32 crc, ByteBuffer payload) throws IOException {
+        payload.flip();
+        if (buffer.remaining() < RECORD_HEADER_BYTES + payload.remaining()) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        crc.reset();
+        crc.update(payload.array(), 0, payload.remaining());
+        buffer.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+    }
+
+    private static ByteBuffer encodePut(Event event) {
+        byte[] name = event.getName() == null ? null : event.getName().getBytes(StandardCharsets.UTF_8);
+        if (name != null && name.length >= NULL_NAME) {
+            throw new IllegalArgumentException("Event name is too long");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 4 + 8 + 2 + (name == null ? 0 : name.length));
+        payload.put(PUT);
+        payload.putInt(event.getId());
+        payload.putInt(event.getLimit() == null ? NULL_INT : event.getLimit());
+        payload.putLong(event.getStartDate() == null ? NULL_LONG : event.getStartDate().toEpochDay());
+        if (name == null) {
+            payload.putShort((short) NULL_NAME);
+        } else {
+            payload.putShort((short) name.length);
+            payload.put(name);
+        }
+        return payload;
+    }
+
+    private static Event decodePut(int id, ByteBuffer record) {
+        Event event = new Event();
+        event.setId(id);
+        int limit = record.getInt();
+        event.setLimit(limit == NULL_INT ? null : limit);
+        long startDate = record.getLong();
+        event.setStartDate(startDate == NULL_LONG ? null : LocalDate.ofEpochDay(startDate));
+        int nameLength = record.getShort() & 0xFFFF;
+        if (nameLength != NULL_NAME) {
+            byte[] name = new byte[nameLength];
+            record.get(name);
+            event.setName(new String(name, StandardCharsets.UTF_8));
+        }
+        return event;
+    }
+
+    private static Event copy(Event event) {
+        Event copy = new Event();
+        copy.setId(event.getId());
+        copy.setName(event.getName());
+        copy.setLimit(event.getLimit());
+        copy.setStartDate(event.getStartDate());
+        return copy;
+    }
+
+    // cursor = base64url("id:값") --> client는 내용을 몰라도 되고 그대로 돌려주기만 하면 된다.
+    private static String encodeCursor(int id, String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((id + ":" + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static IndexKey<String> decodeNameCursor(String cursor) {
+        String[] parts = decodeCursor(cursor);
+        return new IndexKey<>(parts[1], Integer.parseInt(parts[0]));
+    }
+
+    private static IndexKey<LocalDate> decodeDateCursor(String cursor) {
+        String[] parts = decodeCursor(cursor);
+        return new IndexKey<>(LocalDate.ofEpochDay(Long.parseLong(parts[1])), Integer.parseInt(parts[0]));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor : " + cursor);
+            }
+            Integer.parseInt(parts[0]);
+            return parts;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor : " + cursor, ex);
+        }
+    }
+
+    // writer queue에 넣는 쓰기 한 건 : event가 있으면 PUT, 없으면 id를 DELETE
+    @lombok.Value
+    private static class LogWrite {
+        int id;
+        Event event;
+        ByteBuffer record;
+    }
+
+    // commit 전에 메모리에 반영한 것 하나 : applied(PUT한 Event, DELETE면 null)를 빼고 previous를 되돌린다.
+    @lombok.Value
+    private static class Undo {
+        int id;
+        Event applied;
+        Event previous;
+    }
+
+    // 정렬 index의 key : (값, id)
+    private static final class IndexKey<T extends Comparable<? super T>> implements Comparable<IndexKey<T>> {
+        final T value;
+        final int id;
+
+        IndexKey(T value, int id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(IndexKey<T> other) {
+            int result = value.compareTo(other.value);
+            return result != 0 ? result : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IndexKey && value.equals(((IndexKey<?>) o).value) && id == ((IndexKey<?>) o).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode() * 31 + id;
+        }
+    }
+}
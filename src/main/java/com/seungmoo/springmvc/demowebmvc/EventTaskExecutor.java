@@ -0,0 +1,84 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Event API handler가 오래 걸리는 일(ingest 처럼 body를 끝까지 읽는 작업)을 넘기는 전용 thread pool
+ * - handler는 CompletableFuture를 리턴하고 Tomcat worker thread는 바로 돌려준다. (servlet async)
+ *   --> 느린 작업이 쌓여도 Tomcat thread pool이 다 잡혀있지 않으므로 다른 요청(파일 다운로드 등)은 계속 처리된다.
+ * - event.async.enabled=true 일 때만 pool을 만든다. 기본값(false)은 호출한 thread에서 바로 실행한다.
+ * - memory에서 바로 끝나는 조회 같은 handler는 여기로 넘기지 않는다. (pool을 거치는 비용이 더 크고, 몰리면 503이 난다.)
+ * - thread 개수와 queue 크기가 정해져 있다. 둘 다 가득 차면 받지 않고 RejectedExecutionException
+ *   --> EventAsyncAdvice가 503 + Retry-After로 응답한다. (무한정 쌓아두다가 timeout 나는 것보다 빨리 알려주는게 낫다.)
+ * - Spring Boot의 applicationTaskExecutor(queue 무제한)와는 따로 둔다.
+ */
+@Slf4j
+@Component
+public class EventTaskExecutor implements DisposableBean {
+
+    // async를 끄면 null
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public EventTaskExecutor(@Value("${event.async.enabled:false}") boolean enabled,
+                             @Value("${event.async.pool-size:16}") int poolSize,
+                             @Value("${event.async.queue-capacity:100}") int queueCapacity) {
+        if (!enabled) {
+            this.executor = null;
+            return;
+        }
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("event-task-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * async를 끈 경우에는 호출한 thread에서 실행하고 끝난 future를 돌려준다.
+     * @throws RejectedExecutionException thread와 queue가 모두 차 있는 경우
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        if (executor == null) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("event tasks did not finish in time, {} queued", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
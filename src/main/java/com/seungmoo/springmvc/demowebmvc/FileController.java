@@ -1,20 +1,26 @@
 package com.seungmoo.springmvc.demowebmvc;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.File;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Controller
@@ -22,6 +28,18 @@ public class FileController {
     @Autowired
     private ResourceLoader resourceLoader;
 
+    @Autowired
+    private FileSender fileSender;
+
+    @Autowired
+    private MediaTypeDetector mediaTypeDetector;
+
+    @Autowired
+    private FileStore fileStore;
+
+    @Autowired
+    private HotFileCache hotFileCache;
+
     @GetMapping("/file")
     public String fileUploadForm(Model model) { // redirect로 들어온 메시지는 model에 자동으로 담긴다.
         // Model parameter 선언만 해두면 자동으로 데이터가 binding 되고 Model이 view에 전달이 된다.
@@ -31,29 +49,120 @@ public class FileController {
     @PostMapping("/file")
     public String fileUpload(@RequestParam("file") MultipartFile file, // RequestParam의 name은 form에서 보내는 name과 동일하게
                              RedirectAttributes attributes
-                            ) {
-        // 파일 저장하는 기능은 생략함
+                            ) throws IOException {
         log.info("file name : " + file.getName());
         log.info("file original name : " + file.getOriginalFilename());
-        String message = file.getOriginalFilename() + " is uploaded";
+        // MultipartFile은 Tomcat이 임시 파일로 받아둔 part --> InputStream으로 읽어서 저장소에 옮긴다.
+        StoredFile storedFile = fileStore.store(file.getOriginalFilename(), file.getInputStream(), file.getSize());
+        String message = storedFile.getName() + " is uploaded";
         attributes.addFlashAttribute("message", message);
         return "redirect:/file";
     }
 
-    // File Download는 ResponseEntity를 활용하여 구현
+    // multipart를 거치지 않는 업로드
+    // request body를 그대로 읽으면서 저장하므로 메모리나 임시 파일에 먼저 쌓이지 않는다. (대용량 파일은 이쪽을 사용)
+    // ex) curl -T big.iso http://localhost:8080/file/big.iso
+    @PutMapping("/file/{filename}")
+    public ResponseEntity<StoredFile> fileStreamUpload(@PathVariable String filename,
+                                                       HttpServletRequest request) throws IOException {
+        StoredFile storedFile = fileStore.store(filename, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.status(HttpStatus.CREATED).body(storedFile);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> uploadSizeExceeded(MaxUploadSizeExceededException exception) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(exception.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> invalidFilename(IllegalArgumentException exception) {
+        return ResponseEntity.badRequest().body(exception.getMessage());
+    }
+
+    // File Download는 원래 ResponseEntity<Resource>를 활용하여 구현했었음
+    // --> Resource 전체를 heap buffer로 복사해서 보내고 Range 요청(이어받기)도 안되서 FileSender로 응답을 직접 쓴다.
+    // HEAD 요청도 이 핸들러로 들어온다. (FileSender에서 body 생략)
     @GetMapping("/file/{filename}")
-    //@ResponseBody  ResponseEntity를 return 하는 handler의 경우 @ResponseBody 설정할 필요가 없음
-    public ResponseEntity fileDownload(@PathVariable String filename) throws IOException {
-        Resource resource = resourceLoader.getResource("classpath:" + filename);
-        File file = resource.getFile();
-
-        Tika tika = new Tika();
-        String mediaType = tika.detect(file);
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, mediaType)
-                .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(file.length()))
-                .body(resource);
+    public void fileDownload(@PathVariable String filename,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        // 업로드된 파일을 먼저 찾고, 없으면 classpath에 같이 배포된 파일을 찾는다.
+        Optional<StoredFile> storedFile = fileStore.find(filename);
+        try {
+            send(filename, storedFile, request, response);
+        } catch (NoSuchFileException ex) {
+            // 찾은 뒤에 같은 이름으로 다시 올라와서 예전 내용(blob)이 지워진 경우 --> 지금은 없는 파일
+            if (response.isCommitted()) {
+                throw ex;
+            }
+            log.info("file removed while sending : {}", filename);
+            response.reset();
+            response.sendError(HttpStatus.NOT_FOUND.value());
+        }
+    }
+
+    private void send(String filename, Optional<StoredFile> storedFile,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path storedPath = storedFile.map(StoredFile::getPath).orElse(null);
+
+        // 자주 받아가는 작은 파일은 메모리에서 바로 보낸다. (resource 조회, Tika, 파일 읽기 생략)
+        HotFileCache.CachedFile cachedFile = hotFileCache.get(filename, storedPath);
+        if (cachedFile != null) {
+            fileSender.send(cachedFile, request, response);
+            return;
+        }
+
+        Path path;
+        String contentHash = null;
+        if (storedFile.isPresent()) {
+            path = storedPath;
+            // 업로드할 때 계산해둔 hash를 ETag로 사용한다.
+            contentHash = storedFile.get().getSha256();
+        } else {
+            Resource resource = resourceLoader.getResource("classpath:" + filename);
+            if (!resource.exists()) {
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            path = resource.getFile().toPath();
+        }
+
+        // 요청마다 new Tika() 하지 않고, 공용 detector의 cache를 사용한다.
+        // content-addressed 저장소의 파일은 확장자가 없으므로 요청한 파일 이름으로 판단한다.
+        String mediaType = mediaTypeDetector.detect(path, filename);
+
+        cachedFile = hotFileCache.load(filename, path, storedPath, mediaType, contentHash);
+        if (cachedFile != null) {
+            fileSender.send(cachedFile, request, response);
+        } else {
+            // cache하기에 큰 파일
+            fileSender.send(path, mediaType, filename, contentHash, request, response);
+        }
+    }
+
+    // 다운로드 cache 현황
+    @GetMapping("/file-stats")
+    @ResponseBody
+    public Map<String, Object> fileStats() {
+        Map<String, Object> hotCache = new LinkedHashMap<>();
+        long hits = hotFileCache.getHitCount();
+        long requests = hits + hotFileCache.getMissCount();
+        hotCache.put("hits", hits);
+        hotCache.put("misses", hotFileCache.getMissCount());
+        hotCache.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+        hotCache.put("evictions", hotFileCache.getEvictionCount());
+        hotCache.put("entries", hotFileCache.getSize());
+        hotCache.put("bytes", hotFileCache.getBytes());
+
+        Map<String, Object> mediaTypes = new LinkedHashMap<>();
+        mediaTypes.put("hits", mediaTypeDetector.getHitCount());
+        mediaTypes.put("misses", mediaTypeDetector.getMissCount());
+        mediaTypes.put("sniffs", mediaTypeDetector.getSniffCount());
+        mediaTypes.put("entries", mediaTypeDetector.getCacheSize());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hotFileCache", hotCache);
+        stats.put("mediaTypeDetector", mediaTypes);
+        return stats;
     }
 }
@@ -0,0 +1,99 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.Value;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 다운로드 응답 한 벌 (원본 or .gz/.br 파일) --> 본문 + ETag + Last-Modified + Content-Encoding
+ * 본문은 디스크의 파일(FileBody)일 수도 있고, HotFileCache에 올려둔 direct ByteBuffer(BufferBody)일 수도 있다.
+ */
+@Value
+public class FileRepresentation {
+
+    // 원본이면 null
+    String contentEncoding;
+    String etag;
+    long lastModified;
+    Body body;
+
+    public interface Body {
+
+        long length();
+
+        // Tomcat sendfile로 넘길 수 있으면 파일 경로, 아니면 null
+        Path sendfilePath();
+
+        void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+    }
+
+    static final class FileBody implements Body {
+        private final Path path;
+        private final long length;
+
+        FileBody(Path path, long length) {
+            this.path = path;
+            this.length = length;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public Path sendfilePath() {
+            return path;
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long remaining = count;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        // 전송 도중에 파일이 잘린 경우
+                        throw new EOFException("Unexpected end of file at position " + position);
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        }
+    }
+
+    // 여러 요청이 같은 buffer를 동시에 보내므로 원본 buffer의 position은 건드리지 않고 duplicate해서 쓴다.
+    static final class BufferBody implements Body {
+        private final ByteBuffer buffer;
+
+        BufferBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long length() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public Path sendfilePath() {
+            return null;
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            ByteBuffer region = buffer.duplicate();
+            region.limit((int) (position + count)).position((int) position);
+            while (region.hasRemaining()) {
+                target.write(region);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 파일 다운로드 응답을 직접 써주는 컴포넌트
+ * - Range, If-Range 헤더를 처리해서 206 Partial Content를 리턴한다. (range가 여러개면 multipart/byteranges)
+ * - HEAD 요청이면 header만 셋팅하고 파일 본문은 읽지 않는다.
+ * - ETag, Last-Modified를 내려주고 If-None-Match, If-Modified-Since 조건이 맞으면 파일을 열지 않고 304를 리턴한다.
+ * - 압축 가능한 형식이고 미리 압축해둔 파일(xxx.br, xxx.gz)이 옆에 있으면 Accept-Encoding에 맞춰 그 파일을 보낸다.
+ *   (ETag에 encoding을 붙여서 원본과 구분한다.)
+ * - 본문은 heap buffer로 복사하지 않고 FileChannel.transferTo로 보낸다.
+ *   Tomcat connector가 sendfile을 지원하면 아예 Tomcat에 넘겨서 커널에서 바로 소켓으로 복사한다. (zero-copy)
+ * - HotFileCache에 올라간 작은 파일은 메모리(direct ByteBuffer)에서 바로 보낸다. (FileRepresentation.Body)
+ */
+@Component
+public class FileSender {
+
+    // Tomcat이 sendfile을 지원하면 request attribute로 알려준다. (org.apache.tomcat.util.net.Constants 참고)
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+
+    // 미리 압축해둔 파일 : 우선순위 순서대로 {Content-Encoding, 확장자}
+    static final String[][] PRECOMPRESSED = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    private final CompressionSupport compressionSupport;
+
+    @Autowired
+    public FileSender(CompressionSupport compressionSupport) {
+        this.compressionSupport = compressionSupport;
+    }
+
+    /**
+     * @param contentHash 저장소가 알고 있는 파일 내용의 hash, 없으면 null (크기 + 수정시각으로 ETag를 만든다.)
+     */
+    public void send(Path path, String mediaType, String filename, String contentHash,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // jpeg, zip 같이 이미 압축된 형식은 압축본을 찾지 않는다. (파일 stat 절약)
+        String contentEncoding = null;
+        if (compressionSupport.isCompressible(mediaType)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+            for (String[] precompressed : PRECOMPRESSED) {
+                if (!CompressionSupport.acceptsEncoding(acceptEncoding, precompressed[0])) {
+                    continue;
+                }
+                Path sibling = path.resolveSibling(path.getFileName() + precompressed[1]);
+                if (Files.isRegularFile(sibling)) {
+                    path = sibling;
+                    contentEncoding = precompressed[0];
+                    break;
+                }
+            }
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        FileRepresentation representation = new FileRepresentation(contentEncoding,
+                etag(contentHash, length, lastModified, contentEncoding), lastModified, new FileRepresentation.FileBody(path, length));
+        send(representation, mediaType, contentDisposition(filename), request, response);
+    }
+
+    // HotFileCache에 올라가 있는 파일은 파일 시스템을 건드리지 않고 메모리에서 바로 보낸다.
+    public void send(HotFileCache.CachedFile file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (file.isCompressible()) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        FileRepresentation representation = file.select(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        send(representation, file.getMediaType(), file.getContentDisposition(), request, response);
+    }
+
+    private void send(FileRepresentation representation, String mediaType, String contentDisposition,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileRepresentation.Body body = representation.getBody();
+        long length = body.length();
+        String etag = representation.getEtag();
+        long lastModified = representation.getLastModified();
+
+        // 조건부 GET 처리, 조건이 맞으면 304(or 412)를 셋팅하고 true를 리턴한다.
+        // ETag, Last-Modified 응답 헤더도 여기서 셋팅해준다.
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (representation.getContentEncoding() != null) {
+            // Range도 압축된 파일 기준의 byte 위치로 처리된다.
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, representation.getContentEncoding());
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+
+        List<HttpRange> ranges;
+        try {
+            ranges = requestedRanges(request, length, etag, lastModified);
+        } catch (IllegalArgumentException ex) {
+            // 파일 범위를 벗어나거나 형식이 잘못된 Range --> 416
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+
+        boolean headRequest = HttpMethod.HEAD.matches(request.getMethod());
+        if (ranges.isEmpty()) {
+            response.setContentType(mediaType);
+            response.setContentLengthLong(length);
+            if (!headRequest) {
+                sendRegion(body, 0, length, request, response);
+            }
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(length);
+            long end = ranges.get(0).getRangeEnd(length);
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setContentType(mediaType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+            response.setContentLengthLong(end - start + 1);
+            if (!headRequest) {
+                sendRegion(body, start, end - start + 1, request, response);
+            }
+        } else {
+            sendMultipart(body, mediaType, length, ranges, headRequest, response);
+        }
+    }
+
+    // Range 헤더가 없거나 If-Range 조건이 맞지 않으면 빈 리스트 --> 전체 파일을 보낸다.
+    private List<HttpRange> requestedRanges(HttpServletRequest request, long length, String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, etag, lastModified)) {
+            return Collections.emptyList();
+        }
+        List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+        long total = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            // 시작 위치가 파일 길이를 벗어나는 경우
+            if (start >= length || end < start) {
+                throw new IllegalArgumentException("Range " + range + " is not satisfiable for length " + length);
+            }
+            total += end - start + 1;
+        }
+        // 겹치는 range를 잔뜩 보내서 파일보다 큰 응답을 만들게 하는 요청은 거절한다.
+        if (ranges.size() > 1 && total > length) {
+            throw new IllegalArgumentException("Total length of ranges exceeds file length");
+        }
+        return ranges;
+    }
+
+    // If-Range에는 ETag 또는 Last-Modified 날짜가 올 수 있다.
+    // ETag는 strong 비교만 허용한다. (weak ETag는 항상 불일치)
+    // 날짜는 정확히 같아야 한다. (RFC 7233 3.2, 이전이나 이후 날짜는 다른 버전으로 보고 전체를 보낸다.)
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            // HTTP date는 초 단위까지만 표현된다.
+            return lastModified / 1000 == request.getDateHeader(HttpHeaders.IF_RANGE) / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private void sendRegion(FileRepresentation.Body body, long start, long count,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path path = body.sendfilePath();
+        if (path != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // servlet은 아무것도 쓰지 않고, 응답이 끝난 뒤 Tomcat이 sendfile로 파일을 보낸다.
+            request.setAttribute(SENDFILE_FILENAME_ATTR, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return;
+        }
+        body.transferTo(start, count, Channels.newChannel(response.getOutputStream()));
+    }
+
+    private void sendMultipart(FileRepresentation.Body body, String mediaType, long length, List<HttpRange> ranges,
+                               boolean headRequest, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        // Content-Length를 미리 계산하기 위해 part header를 먼저 만들어 둔다.
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + mediaType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, length) + CRLF + CRLF)
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + (end - start + 1);
+        }
+        byte[] closeDelimiter = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closeDelimiter.length;
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (headRequest) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        for (int i = 0; i < ranges.size(); i++) {
+            long start = ranges.get(i).getRangeStart(length);
+            long end = ranges.get(i).getRangeEnd(length);
+            out.write(partHeaders.get(i));
+            body.transferTo(start, end - start + 1, target);
+        }
+        out.write(closeDelimiter);
+    }
+
+    // 내용 hash를 알면 hash로, 모르면 크기 + 수정시각으로 strong ETag를 만든다. (파일을 읽어서 hash를 계산하지 않음)
+    static String etag(String contentHash, long length, long lastModified, String contentEncoding) {
+        String tag = contentHash != null ? contentHash : Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+        if (contentEncoding != null) {
+            tag += "-" + contentEncoding;
+        }
+        return "\"" + tag + "\"";
+    }
+
+    static String contentDisposition(String filename) {
+        return "attachment; filename=\"" + filename + "\"";
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
@@ -0,0 +1,29 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * 업로드 파일 저장소
+ * file.store.type 으로 구현체를 고른다.
+ * - content-addressed (기본값) : 내용(SHA-256) 기준으로 저장, 같은 내용은 한번만 저장 --> ContentAddressedFileStore
+ * - local : 파일 이름 그대로 저장 --> LocalFileStore
+ */
+public interface FileStore {
+
+    /**
+     * @param declaredLength Content-Length, 모르면 -1
+     */
+    StoredFile store(String filename, InputStream in, long declaredLength) throws IOException;
+
+    /**
+     * 이미 디스크에 만들어진 파일(ex. 조각으로 나눠서 받은 업로드)을 저장소로 옮긴다.
+     */
+    StoredFile store(String filename, Path source) throws IOException;
+
+    Optional<StoredFile> find(String filename) throws IOException;
+
+    long getMaxSize();
+}
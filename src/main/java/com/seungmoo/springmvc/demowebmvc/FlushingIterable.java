@@ -0,0 +1,56 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * view(Thymeleaf th:each)에서 반복하는 동안 일정 개수마다 응답을 flush 해주는 Iterable
+ * - Thymeleaf는 렌더링한 결과를 바로 response writer로 쓰지만, servlet 응답 buffer가 찰 때까지는 client로 나가지 않는다.
+ *   --> 목록을 꺼내기 직전(첫번째 항목)과 flushEvery개마다 flushBuffer() 해서 chunked로 먼저 내보낸다.
+ * - 목록을 List로 모아두지 않고 source에서 하나씩 꺼내므로 목록이 길어져도 첫 byte까지의 시간이 일정하다.
+ * - 한번 flush 하면 응답이 commit 되므로 그 이후에 난 오류는 error page로 바꿀 수 없다. (응답이 중간에 끊긴다.)
+ */
+public class FlushingIterable<T> implements Iterable<T> {
+
+    private final Iterable<T> source;
+    private final HttpServletResponse response;
+    private final int flushEvery;
+
+    public FlushingIterable(Iterable<T> source, HttpServletResponse response, int flushEvery) {
+        if (flushEvery < 1) {
+            throw new IllegalArgumentException("flushEvery must be positive : " + flushEvery);
+        }
+        this.source = source;
+        this.response = response;
+        this.flushEvery = flushEvery;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<T> iterator = source.iterator();
+        return new Iterator<T>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                T next = iterator.next();
+                // 지금까지 렌더링한 부분(첫번째는 목록 앞의 head 부분)을 내보낸다.
+                if (count++ % flushEvery == 0) {
+                    try {
+                        response.flushBuffer();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                return next;
+            }
+        };
+    }
+}
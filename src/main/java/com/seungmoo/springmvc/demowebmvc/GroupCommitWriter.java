@@ -0,0 +1,146 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * group commit : 여러 요청의 쓰기를 writer thread 하나가 모아서 한번에 commit(fsync) 한다.
+ * - 요청 thread는 bounded queue에 넣고 CompletableFuture를 받는다. (queue가 가득 차면 자리가 날 때까지 기다린다. --> backpressure)
+ * - writer thread는 queue에 쌓인 만큼(최대 maxBatch개) 꺼내서 apply 하고 commit 한 번 한 뒤 future를 모두 완료한다.
+ *   --> fsync 한 번 하는 동안 들어온 요청은 다음 batch로 같이 묶인다. (요청이 많을수록 batch가 커진다.)
+ * - maxDelay > 0 이면 첫번째 요청 이후 그 시간만큼 더 모았다가 commit 한다. (응답 시간을 조금 늘리는 대신 fsync 횟수를 줄인다.)
+ * - future가 완료되면 commit까지 끝난 것이다. (apply한 결과는 commit 전에 다른 요청에서 먼저 보일 수 있다.)
+ */
+@Slf4j
+public class GroupCommitWriter<T, R> implements AutoCloseable {
+
+    private final BlockingQueue<Pending<T, R>> queue;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Function<T, R> apply;
+    private final Runnable commit;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param apply  writer thread에서 한 건씩 실행 (예외를 던지면 그 건만 실패)
+     * @param commit batch 하나를 다 apply한 뒤 실행 (예외를 던지면 batch 전체가 실패)
+     */
+    public GroupCommitWriter(String name, int queueSize, int maxBatch, Duration maxDelay,
+                             Function<T, R> apply, Runnable commit) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive : " + maxBatch);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.apply = apply;
+        this.commit = commit;
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<R> submit(T item) {
+        Pending<T, R> pending = new Pending<>(item);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Writer is closed"));
+            return pending.future;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(ex);
+            return pending.future;
+        }
+        // 넣는 사이에 writer가 끝났으면 아무도 꺼내가지 않는다.
+        if (closed && !writer.isAlive()) {
+            failRemaining();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 이미 넣은 것은 모두 commit 하고 writer thread를 끝낸다.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        writer.join();
+        failRemaining();
+    }
+
+    private void run() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending<T, R> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch && maxDelayNanos > 0) {
+                    Pending<T, R> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException ex) {
+                // close()는 interrupt 하지 않는다. 모은 것까지는 처리하고 계속
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending<T, R>> batch) {
+        for (Pending<T, R> pending : batch) {
+            try {
+                pending.result = apply.apply(pending.item);
+            } catch (RuntimeException ex) {
+                pending.future.completeExceptionally(ex);
+            }
+        }
+        try {
+            commit.run();
+        } catch (RuntimeException ex) {
+            log.error("group commit failed ({} writes)", batch.size(), ex);
+            batch.forEach(pending -> pending.future.completeExceptionally(ex));
+            return;
+        }
+        // 이미 실패한 건은 complete가 무시된다.
+        batch.forEach(pending -> pending.future.complete(pending.result));
+    }
+
+    private void failRemaining() {
+        Pending<T, R> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+    }
+
+    private static class Pending<T, R> {
+        final T item;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        R result;
+
+        Pending(T item) {
+            this.item = item;
+        }
+    }
+}
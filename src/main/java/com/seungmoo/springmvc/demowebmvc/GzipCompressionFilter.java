@@ -0,0 +1,397 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * JSON, text 같은 동적 응답을 gzip으로 압축해주는 filter
+ * - 응답 앞부분(min-response-size 만큼)을 buffer에 모아두고, 넘치는 순간 압축할지 결정한다.
+ *   그 전에 응답이 끝나면 작은 응답이므로 압축하지 않고 그대로 보낸다.
+ * - 이미 Content-Encoding이 있거나(FileSender의 .gz/.br 파일), 206 응답이거나, 압축 대상 형식이 아니면(jpeg 등) 그대로 보낸다.
+ * - ETag, Accept-Ranges가 붙은 응답(파일 다운로드)도 그대로 보낸다.
+ *   ETag와 byte range는 압축하지 않은 내용을 가리키므로 압축하면 cache의 조건부 요청, Range 요청이 깨진다.
+ *   (압축해서 보낼 파일은 FileSender가 미리 만든 .gz/.br 파일을 쓴다.)
+ * - Deflater는 CompressionSupport의 pool에서 빌려 쓰고 응답이 끝나면 돌려준다.
+ *   (GZIPOutputStream은 매번 Deflater를 새로 만들기 때문에 gzip header/trailer를 직접 쓴다.)
+ * - 비동기 처리 중인 응답(StreamingResponseBody 등)은 압축하지 않는다.
+ *   ResponseEntity, DeferredResult 같은 결과는 async dispatch 때 다시 이 filter를 지나므로 압축된다.
+ */
+@Component
+public class GzipCompressionFilter extends OncePerRequestFilter {
+
+    // ID1, ID2, CM(deflate), FLG, MTIME(4), XFL, OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    @Autowired
+    private CompressionSupport compressionSupport;
+
+    public GzipCompressionFilter() {
+    }
+
+    GzipCompressionFilter(CompressionSupport compressionSupport) {
+        this.compressionSupport = compressionSupport;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !compressionSupport.isEnabled()
+                || HttpMethod.HEAD.matches(request.getMethod())
+                || !CompressionSupport.acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), "gzip");
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        GzipResponseWrapper wrapper = new GzipResponseWrapper(request, response);
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (!request.isAsyncStarted()) {
+                wrapper.finish();
+            }
+        } finally {
+            wrapper.releaseDeflater();
+        }
+    }
+
+    private enum State {
+        UNDECIDED, PASSTHROUGH, COMPRESS
+    }
+
+    private final class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private final int threshold;
+
+        private State state = State.UNDECIDED;
+        private byte[] buffer;
+        private int count;
+        private long declaredContentLength = -1;
+
+        private Deflater deflater;
+        private CRC32 crc;
+        private DeflaterOutputStream deflaterStream;
+
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        GzipResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+            this.threshold = (int) compressionSupport.getMinResponseSize().toBytes();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new GzipServletOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        // Content-Length는 압축 여부가 정해질 때까지 미뤄둔다.
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (state == State.PASSTHROUGH) {
+                super.setContentLengthLong(len);
+            } else if (state == State.UNDECIDED) {
+                declaredContentLength = len;
+                // 작은 응답인 게 확실하면 바로 그대로 보내기로 한다.
+                if (len < threshold) {
+                    startPassthrough();
+                }
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        // 명시적으로 응답을 commit하려는 경우에는 header가 나가기 전에 압축 여부를 정한다.
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (state == State.UNDECIDED) {
+                decide();
+            }
+            getOutputStream().flush();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (state == State.UNDECIDED) {
+                count = 0;
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            if (state == State.UNDECIDED) {
+                count = 0;
+                declaredContentLength = -1;
+            }
+            super.reset();
+        }
+
+        // 에러 페이지, redirect는 container가 쓰므로 모아둔 내용은 버린다.
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            abandon();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            abandon();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            abandon();
+            super.sendRedirect(location);
+        }
+
+        private void abandon() {
+            if (state == State.UNDECIDED) {
+                count = 0;
+                state = State.PASSTHROUGH;
+            }
+        }
+
+        private boolean shouldCompress() {
+            if (request.isAsyncStarted()) {
+                return false;
+            }
+            int status = getStatus();
+            if (status < HttpStatus.OK.value() || status == HttpStatus.NO_CONTENT.value()
+                    || status == HttpStatus.PARTIAL_CONTENT.value() || status == HttpStatus.NOT_MODIFIED.value()) {
+                return false;
+            }
+            if (getHeader(HttpHeaders.CONTENT_ENCODING) != null || getHeader(HttpHeaders.CONTENT_RANGE) != null
+                    || getHeader(HttpHeaders.ETAG) != null || getHeader(HttpHeaders.ACCEPT_RANGES) != null) {
+                return false;
+            }
+            return compressionSupport.isCompressible(getContentType());
+        }
+
+        private void decide() throws IOException {
+            if (shouldCompress()) {
+                startCompression();
+            } else {
+                startPassthrough();
+                writeBuffered();
+            }
+        }
+
+        private void startPassthrough() {
+            state = State.PASSTHROUGH;
+            if (declaredContentLength >= 0) {
+                super.setContentLengthLong(declaredContentLength);
+            }
+        }
+
+        private void startCompression() throws IOException {
+            state = State.COMPRESS;
+            super.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            if (!varies()) {
+                super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+
+            deflater = compressionSupport.borrowDeflater();
+            crc = new CRC32();
+            ServletOutputStream target = getResponse().getOutputStream();
+            target.write(GZIP_HEADER);
+            // syncFlush : flush() 하면 지금까지 압축한 내용을 바로 client로 보낸다. (streaming 응답)
+            deflaterStream = new DeflaterOutputStream(target, deflater, 8192, true);
+            if (count > 0) {
+                crc.update(buffer, 0, count);
+                deflaterStream.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        // handler가 이미 Vary: Accept-Encoding (또는 *)을 넣었는지
+        private boolean varies() {
+            for (String vary : getHeaders(HttpHeaders.VARY)) {
+                for (String name : vary.split(",")) {
+                    String trimmed = name.trim();
+                    if (trimmed.equals("*") || trimmed.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void writeBuffered() throws IOException {
+            if (count > 0) {
+                getResponse().getOutputStream().write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (state == State.UNDECIDED) {
+                // 끝까지 threshold를 넘지 않은 작은 응답
+                if (declaredContentLength < 0 && !isCommitted()) {
+                    declaredContentLength = count;
+                }
+                startPassthrough();
+                writeBuffered();
+            } else if (state == State.COMPRESS && deflaterStream != null) {
+                deflaterStream.finish();
+                ServletOutputStream target = getResponse().getOutputStream();
+                writeInt(target, (int) crc.getValue());
+                writeInt(target, (int) deflater.getBytesRead());
+                deflaterStream = null;
+                releaseDeflater();
+            }
+        }
+
+        void releaseDeflater() {
+            if (deflater != null) {
+                compressionSupport.releaseDeflater(deflater);
+                deflater = null;
+            }
+        }
+
+        // gzip trailer는 little endian
+        private void writeInt(ServletOutputStream out, int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+
+        private final class GzipServletOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (state == State.UNDECIDED) {
+                    // 비동기 응답은 finish()를 불러줄 곳이 없으므로 모으지 않고 바로 보낸다.
+                    if (count + len <= threshold && !request.isAsyncStarted()) {
+                        if (buffer == null) {
+                            buffer = new byte[threshold];
+                        }
+                        System.arraycopy(b, off, buffer, count, len);
+                        count += len;
+                        return;
+                    }
+                    decide();
+                }
+                if (state == State.COMPRESS) {
+                    if (deflaterStream == null) {
+                        throw new IOException("Response is already finished");
+                    }
+                    crc.update(b, off, len);
+                    deflaterStream.write(b, off, len);
+                } else {
+                    getResponse().getOutputStream().write(b, off, len);
+                }
+            }
+
+            // message converter는 작은 JSON을 쓰고 나서도 flush를 부르므로, 결정 전에는 flush를 무시하고 계속 모은다.
+            // (streaming 응답은 첫 threshold 만큼만 늦게 나간다.)
+            @Override
+            public void flush() throws IOException {
+                if (state == State.UNDECIDED) {
+                    if (!request.isAsyncStarted()) {
+                        return;
+                    }
+                    decide();
+                }
+                if (state == State.COMPRESS && deflaterStream != null) {
+                    deflaterStream.flush();
+                } else {
+                    getResponse().getOutputStream().flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+                getResponse().getOutputStream().close();
+            }
+
+            @Override
+            public boolean isReady() {
+                try {
+                    return getResponse().getOutputStream().isReady();
+                } catch (IOException ex) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * handler method별 처리 시간, 처리 중인 요청 수, 응답 크기, 에러, 할당한 메모리를 기록한다. (/actuator/metrics)
+ * - handler.requests        : Timer, tag handler(Controller.method), status(2xx ~ 5xx)
+ *                             (percentile은 management.metrics.distribution.* 설정으로 켠다.)
+ * - handler.errors          : 4xx/5xx 또는 예외로 끝난 요청 수, tag handler, exception
+ * - handler.active          : 지금 처리 중인 요청 수 (async 처리 중인 요청 포함)
+ * - handler.response.size   : 응답 본문으로 실제 나간 byte 수 (압축했으면 압축한 크기, HEAD는 0)
+ *                             쓴 byte는 ResponseSizeFilter가 세고, 응답이 끝난 뒤에 기록한다. (async는 완료될 때)
+ * - handler.allocated.bytes : 요청 하나가 할당한 heap 크기, sample-rate 요청마다 한번씩만 잰다.
+ *                             시작한 thread에서 끝난 요청만 잰다. (async는 여러 thread를 거치므로 빠진다.)
+ * 요청마다 tag를 만들지 않도록 handler method별 meter를 처음 한번만 만들어 둔다.
+ * spring-boot가 기록하는 http.server.requests(uri 기준)와 달리 handler method 기준이다.
+ */
+@Slf4j
+@Component
+public class HandlerMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".START";
+    // 응답 크기를 기록할 DistributionSummary, ResponseSizeFilter가 응답이 끝난 뒤에 꺼내 쓴다.
+    static final String RESPONSE_SIZE_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".RESPONSE_SIZE";
+
+    private final MeterRegistry meterRegistry;
+    private final int allocationSampleRate;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final ConcurrentHashMap<Method, HandlerMeters> meters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HandlerMetricsInterceptor(MeterRegistry meterRegistry,
+                                     @Value("${handler.metrics.allocation-sample-rate:100}") int allocationSampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.allocationSampleRate = allocationSampleRate;
+        this.threadMXBean = allocationSampleRate > 0 ? allocationMXBean() : null;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // async 처리가 끝나고 다시 dispatch된 경우 --> 처음 시작한 시간을 그대로 쓴다.
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(START_ATTRIBUTE) != null) {
+            return true;
+        }
+        HandlerMeters handlerMeters = meters(((HandlerMethod) handler));
+        handlerMeters.active.incrementAndGet();
+        long allocatedBytes = -1;
+        if (threadMXBean != null && requestCount.incrementAndGet() % allocationSampleRate == 0) {
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        request.setAttribute(START_ATTRIBUTE, new Start(handlerMeters, System.nanoTime(), Thread.currentThread().getId(), allocatedBytes));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Start start = (Start) request.getAttribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        HandlerMeters handlerMeters = start.meters;
+        handlerMeters.active.decrementAndGet();
+
+        int status = response.getStatus();
+        handlerMeters.timer(status).record(System.nanoTime() - start.nanoTime, TimeUnit.NANOSECONDS);
+
+        // @ExceptionHandler가 처리한 예외는 ex로 넘어오지 않는다.
+        Object exception = ex != null ? ex : request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+        if (exception != null || status >= 400) {
+            handlerMeters.error(exception == null ? "none" : exception.getClass().getSimpleName()).increment();
+        }
+
+        // 여기서는 아직 본문이 다 나가지 않았을 수 있다. (GzipCompressionFilter가 모아둔 내용 등)
+        request.setAttribute(RESPONSE_SIZE_ATTRIBUTE, handlerMeters.responseSize);
+
+        if (start.allocatedBytes >= 0 && start.threadId == Thread.currentThread().getId()) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(start.threadId) - start.allocatedBytes;
+            handlerMeters.allocated.record(allocated);
+        }
+    }
+
+    private HandlerMeters meters(HandlerMethod handlerMethod) {
+        HandlerMeters handlerMeters = meters.get(handlerMethod.getMethod());
+        if (handlerMeters == null) {
+            handlerMeters = meters.computeIfAbsent(handlerMethod.getMethod(), method ->
+                    new HandlerMeters(meterRegistry, handlerMethod.getBeanType().getSimpleName() + "." + method.getName()));
+        }
+        return handlerMeters;
+    }
+
+    // HotSpot(com.sun.management.ThreadMXBean)에서만 thread별 할당량을 알 수 있다.
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (!allocation.isThreadAllocatedMemoryEnabled()) {
+                allocation.setThreadAllocatedMemoryEnabled(true);
+            }
+            return allocation;
+        }
+        log.warn("thread allocated memory is not supported on this JVM, handler.allocated.bytes is disabled");
+        return null;
+    }
+
+    private static class Start {
+        final HandlerMeters meters;
+        final long nanoTime;
+        final long threadId;
+        final long allocatedBytes;
+
+        Start(HandlerMeters meters, long nanoTime, long threadId, long allocatedBytes) {
+            this.meters = meters;
+            this.nanoTime = nanoTime;
+            this.threadId = threadId;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static class HandlerMeters {
+        final MeterRegistry registry;
+        final String handler;
+        final AtomicInteger active = new AtomicInteger();
+        // 1xx ~ 5xx
+        final Timer[] timers = new Timer[6];
+        final ConcurrentHashMap<String, Counter> errors = new ConcurrentHashMap<>();
+        final DistributionSummary responseSize;
+        final DistributionSummary allocated;
+
+        HandlerMeters(MeterRegistry registry, String handler) {
+            this.registry = registry;
+            this.handler = handler;
+            Gauge.builder("handler.active", active, AtomicInteger::get)
+                    .tag("handler", handler)
+                    .register(registry);
+            this.responseSize = DistributionSummary.builder("handler.response.size")
+                    .baseUnit("bytes")
+                    .tag("handler", handler)
+                    .register(registry);
+            this.allocated = DistributionSummary.builder("handler.allocated.bytes")
+                    .baseUnit("bytes")
+                    .tag("handler", handler)
+                    .register(registry);
+        }
+
+        Timer timer(int status) {
+            int series = status / 100;
+            if (series < 1 || series > 5) {
+                series = HttpStatus.INTERNAL_SERVER_ERROR.value() / 100;
+            }
+            Timer timer = timers[series];
+            if (timer == null) {
+                // 같은 이름, tag면 registry가 같은 Timer를 돌려주므로 동시에 만들어도 된다.
+                timer = Timer.builder("handler.requests")
+                        .tag("handler", handler)
+                        .tag("status", series + "xx")
+                        .register(registry);
+                timers[series] = timer;
+            }
+            return timer;
+        }
+
+        Counter error(String exception) {
+            return errors.computeIfAbsent(exception, name -> Counter.builder("handler.errors")
+                    .tag("handler", handler)
+                    .tag("exception", name)
+                    .register(registry));
+        }
+    }
+}
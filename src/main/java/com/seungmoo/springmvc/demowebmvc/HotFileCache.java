@@ -0,0 +1,325 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 자주 받아가는 작은 파일을 메모리에 올려두는 cache
+ * - 파일 내용은 heap 밖(direct ByteBuffer)에 두어 GC 부담 없이 socket으로 바로 쓴다.
+ * - media type, ETag, Content-Disposition 같은 응답 header 값도 미리 만들어둔다.
+ *   --> cache에 있으면 resourceLoader, Tika, 파일 stat/read 없이 응답한다.
+ * - 미리 압축해둔 .br/.gz 파일이 있으면 같이 올려둔다.
+ * - 파일이 바뀌었는지는 revalidate-interval 마다 한번씩만 mtime/size로 확인한다. (그 사이에는 syscall 없음)
+ * - 전체 크기(max-total-size)를 넘으면 가장 오래 안쓴 파일부터 뺀다. (LRU)
+ * - max-file-size보다 커서 올리지 않은 파일은 (size, mtime)과 함께 기억해둔다.
+ *   --> 다음 요청부터는 압축본 stat 없이 바로 건너뛰고, miss로 세지 않는다. (바뀌었는지는 revalidate-interval 마다 원본 stat 한 번)
+ */
+@Component
+public class HotFileCache {
+
+    private static final int MAX_TOO_LARGE_ENTRIES = 1024;
+
+    private final CompressionSupport compressionSupport;
+    private final long maxFileSize;
+    private final long maxTotalSize;
+    private final long revalidateIntervalNanos;
+
+    // accessOrder = true --> LRU, 접근할 때마다 순서가 바뀌므로 읽기도 lock 안에서 한다.
+    private final LinkedHashMap<String, CachedFile> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // 너무 커서 cache하지 않는 파일, 이것도 개수를 제한한다. (LRU)
+    private final LinkedHashMap<String, TooLarge> tooLarge = new LinkedHashMap<String, TooLarge>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TooLarge> eldest) {
+            return size() > MAX_TOO_LARGE_ENTRIES;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public HotFileCache(CompressionSupport compressionSupport,
+                        @Value("${file.hot-cache.max-file-size:64KB}") DataSize maxFileSize,
+                        @Value("${file.hot-cache.max-total-size:32MB}") DataSize maxTotalSize,
+                        @Value("${file.hot-cache.revalidate-interval:1s}") Duration revalidateInterval) {
+        this.compressionSupport = compressionSupport;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxTotalSize = maxTotalSize.toBytes();
+        this.revalidateIntervalNanos = revalidateInterval.toNanos();
+    }
+
+    /**
+     * @param storedPath 저장소(FileStore)에서 찾은 파일 경로, classpath 파일이면 null
+     *                   같은 이름으로 새로 업로드되면 경로가 달라지므로 cache를 버린다.
+     * @return cache에 없거나 파일이 바뀌었으면 null
+     */
+    public CachedFile get(String filename, Path storedPath) throws IOException {
+        CachedFile file;
+        synchronized (cache) {
+            file = cache.get(filename);
+        }
+        if (file == null || !Objects.equals(file.storedPath, storedPath) || !isFresh(file)) {
+            if (file != null) {
+                remove(filename, file);
+            }
+            // 원래 cache하지 않는 파일은 miss가 아니다.
+            if (!isTooLarge(filename, storedPath)) {
+                misses.increment();
+            }
+            return null;
+        }
+        hits.increment();
+        return file;
+    }
+
+    /**
+     * 파일을 읽어서 cache에 올린다.
+     * @return 너무 커서 cache하지 않으면 null
+     */
+    public CachedFile load(String filename, Path path, Path storedPath, String mediaType, String contentHash) throws IOException {
+        if (isTooLarge(filename, storedPath)) {
+            return null;
+        }
+        boolean compressible = compressionSupport.isCompressible(mediaType);
+        List<Path> paths = new ArrayList<>();
+        paths.add(path);
+        if (compressible) {
+            for (String[] precompressed : FileSender.PRECOMPRESSED) {
+                paths.add(path.resolveSibling(path.getFileName() + precompressed[1]));
+            }
+        }
+
+        // 원본과 압축본의 (size, mtime), 없는 파일은 -1 --> 나중에 바뀌었는지 비교하는 용도
+        long[] signature = signature(paths);
+        if (signature[0] < 0) {
+            return null;
+        }
+        if (signature[0] > maxFileSize) {
+            synchronized (tooLarge) {
+                tooLarge.put(filename, new TooLarge(storedPath, path, signature[0], signature[1], System.nanoTime()));
+            }
+            return null;
+        }
+
+        // 우선순위 순서대로 (br, gzip, 원본)
+        List<FileRepresentation> representations = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 1; i <= paths.size(); i++) {
+            int index = i % paths.size();
+            long length = signature[index * 2];
+            if (length < 0 || length > maxFileSize) {
+                continue;
+            }
+            String contentEncoding = index == 0 ? null : FileSender.PRECOMPRESSED[index - 1][0];
+            long lastModified = signature[index * 2 + 1];
+            ByteBuffer buffer = read(paths.get(index), length);
+            representations.add(new FileRepresentation(contentEncoding,
+                    FileSender.etag(contentHash, length, lastModified, contentEncoding), lastModified,
+                    new FileRepresentation.BufferBody(buffer)));
+            bytes += length;
+        }
+
+        CachedFile file = new CachedFile(mediaType, FileSender.contentDisposition(filename), compressible,
+                representations, storedPath, paths, signature, bytes, System.nanoTime());
+        synchronized (tooLarge) {
+            tooLarge.remove(filename);
+        }
+        synchronized (cache) {
+            CachedFile previous = cache.put(filename, file);
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            Iterator<CachedFile> iterator = cache.values().iterator();
+            while (totalBytes > maxTotalSize && iterator.hasNext()) {
+                CachedFile eldest = iterator.next();
+                iterator.remove();
+                totalBytes -= eldest.bytes;
+                evictions.increment();
+            }
+            // 새로 올린 파일이 max-total-size 보다 커서 바로 밀려난 경우
+            return cache.containsKey(filename) ? file : null;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // direct buffer로 잡고 있는 byte 수
+    public long getBytes() {
+        synchronized (cache) {
+            return totalBytes;
+        }
+    }
+
+    private boolean isFresh(CachedFile file) throws IOException {
+        long now = System.nanoTime();
+        if (now - file.lastValidated < revalidateIntervalNanos) {
+            return true;
+        }
+        if (!Arrays.equals(file.signature, signature(file.paths))) {
+            return false;
+        }
+        file.lastValidated = now;
+        return true;
+    }
+
+    // 전에 너무 커서 건너뛴 파일이 그대로인지 (원본의 size, mtime만 본다.)
+    private boolean isTooLarge(String filename, Path storedPath) throws IOException {
+        TooLarge skipped;
+        synchronized (tooLarge) {
+            skipped = tooLarge.get(filename);
+        }
+        if (skipped == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (Objects.equals(skipped.storedPath, storedPath)) {
+            if (now - skipped.lastValidated < revalidateIntervalNanos) {
+                return true;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(skipped.path, BasicFileAttributes.class);
+                if (attributes.size() == skipped.size && attributes.lastModifiedTime().toMillis() == skipped.lastModified) {
+                    skipped.lastValidated = now;
+                    return true;
+                }
+            } catch (NoSuchFileException ex) {
+                // 지워졌으면 아래에서 잊는다.
+            }
+        }
+        synchronized (tooLarge) {
+            tooLarge.remove(filename, skipped);
+        }
+        return false;
+    }
+
+    private void remove(String filename, CachedFile file) {
+        synchronized (cache) {
+            if (cache.remove(filename, file)) {
+                totalBytes -= file.bytes;
+            }
+        }
+    }
+
+    private static long[] signature(List<Path> paths) throws IOException {
+        long[] signature = new long[paths.size() * 2];
+        for (int i = 0; i < paths.size(); i++) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(paths.get(i), BasicFileAttributes.class);
+                signature[i * 2] = attributes.size();
+                signature[i * 2 + 1] = attributes.lastModifiedTime().toMillis();
+            } catch (NoSuchFileException ex) {
+                signature[i * 2] = -1;
+                signature[i * 2 + 1] = -1;
+            }
+        }
+        return signature;
+    }
+
+    private static ByteBuffer read(Path path, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            }
+        }
+        // 읽는 중에 파일이 잘린 경우 읽은 만큼만 (다음 revalidate 때 다시 읽는다.)
+        buffer.flip();
+        return buffer.slice();
+    }
+
+    private static class TooLarge {
+        final Path storedPath;
+        final Path path;
+        final long size;
+        final long lastModified;
+        volatile long lastValidated;
+
+        TooLarge(Path storedPath, Path path, long size, long lastModified, long lastValidated) {
+            this.storedPath = storedPath;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.lastValidated = lastValidated;
+        }
+    }
+
+    public static class CachedFile {
+        @Getter
+        private final String mediaType;
+        @Getter
+        private final String contentDisposition;
+        @Getter
+        private final boolean compressible;
+        private final List<FileRepresentation> representations;
+
+        private final Path storedPath;
+        private final List<Path> paths;
+        private final long[] signature;
+        private final long bytes;
+        private volatile long lastValidated;
+
+        CachedFile(String mediaType, String contentDisposition, boolean compressible,
+                   List<FileRepresentation> representations, Path storedPath,
+                   List<Path> paths, long[] signature, long bytes, long lastValidated) {
+            this.mediaType = mediaType;
+            this.contentDisposition = contentDisposition;
+            this.compressible = compressible;
+            this.representations = representations;
+            this.storedPath = storedPath;
+            this.paths = paths;
+            this.signature = signature;
+            this.bytes = bytes;
+            this.lastValidated = lastValidated;
+        }
+
+        // Accept-Encoding으로 받을 수 있는 것 중 우선순위가 가장 높은 것, 없으면 원본
+        FileRepresentation select(String acceptEncoding) {
+            for (FileRepresentation representation : representations) {
+                String contentEncoding = representation.getContentEncoding();
+                if (contentEncoding == null || CompressionSupport.acceptsEncoding(acceptEncoding, contentEncoding)) {
+                    return representation;
+                }
+            }
+            throw new IllegalStateException("No identity representation");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * 업로드 파일을 이름 그대로 file.upload.dir 에 저장하는 저장소 (file.store.type=local)
+ * 같은 이름으로 다시 올리면 덮어쓴다.
+ */
+@Component
+@ConditionalOnProperty(name = "file.store.type", havingValue = "local")
+public class LocalFileStore extends AbstractFileStore {
+
+    @Autowired
+    public LocalFileStore(@Value("${file.upload.dir:${java.io.tmpdir}/demo-web-mvc/upload}") String uploadDir,
+                          @Value("${file.upload.chunk-size:64KB}") DataSize chunkSize,
+                          @Value("${file.upload.max-size:10GB}") DataSize maxSize) throws IOException {
+        super(Paths.get(uploadDir), (int) chunkSize.toBytes(), maxSize.toBytes());
+    }
+
+    @Override
+    protected StoredFile place(String name, Path source, long size, String sha256) throws IOException {
+        Path target = storeDir.resolve(name);
+        move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        return new StoredFile(name, target, size, sha256);
+    }
+
+    // 이름으로만 저장하므로 checksum은 알 수 없다.
+    @Override
+    public Optional<StoredFile> find(String filename) throws IOException {
+        Path path = storeDir.resolve(cleanFilename(filename));
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(new StoredFile(path.getFileName().toString(), path, Files.size(path), null));
+    }
+}
@@ -0,0 +1,133 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.MatrixVariable;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @MatrixVariable을 선언한 handler에만 matrix variable을 읽어주는 RequestMappingHandlerMapping
+ * - 예전에는 matrix variable 때문에 UrlPathHelper.setRemoveSemicolonContent(false)를 전체에 걸었다.
+ *   --> 모든 요청의 path에 ";..."가 남아서 mapping 비교, cache key가 길어지고,
+ *       /events/list;jsessionid=.. 같은 path는 고정 path mapping에 맞지도 않았다.
+ * - 이제 mapping은 기본대로(semicolon 제거한 path) 찾고,
+ *   찾은 handler가 @MatrixVariable parameter를 가지고 있을 때만 semicolon이 남은 path로 한번 더 읽는다.
+ * - matrix variable은 WebUtils.parseMatrixVariables와 같은 규칙으로 한번 훑으면서 바로 MultiValueMap에 넣는다.
+ *   (StringTokenizer, 중간 String[] 배열을 만들지 않는다.)
+ */
+public class MatrixVariableRequestMappingHandlerMapping extends RequestMappingHandlerMapping {
+
+    private final ConcurrentHashMap<Method, Boolean> matrixHandlers = new ConcurrentHashMap<>();
+    private UrlPathHelper rawPathHelper = rawPathHelper(new UrlPathHelper());
+
+    @Override
+    public void setUrlPathHelper(UrlPathHelper urlPathHelper) {
+        super.setUrlPathHelper(urlPathHelper);
+        this.rawPathHelper = rawPathHelper(urlPathHelper);
+    }
+
+    @Override
+    protected void handleMatch(RequestMappingInfo info, String lookupPath, HttpServletRequest request) {
+        super.handleMatch(info, lookupPath, request);
+        // removeSemicolonContent=false 라면 spring이 이미 읽어두었다.
+        if (!getUrlPathHelper().shouldRemoveSemicolonContent()) {
+            return;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) request.getAttribute(BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (handlerMethod == null || !declaresMatrixVariables(handlerMethod)) {
+            return;
+        }
+        String rawPath = rawPathHelper.getLookupPathForRequest(request);
+        String bestPattern = (String) request.getAttribute(BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (rawPath.indexOf(';') == -1 || bestPattern == null || !getPathMatcher().match(bestPattern, rawPath)) {
+            return;
+        }
+
+        Map<String, MultiValueMap<String, String>> matrixVariables = new LinkedHashMap<>();
+        getPathMatcher().extractUriTemplateVariables(bestPattern, rawPath).forEach((name, value) -> {
+            // {id} --> "1;name=seungmoo" 또는 "q=11;r=12" (segment 전체가 matrix variable)
+            int equals = value.indexOf('=');
+            if (equals == -1) {
+                return;
+            }
+            int semicolon = value.indexOf(';');
+            int start = semicolon <= 0 || equals < semicolon ? 0 : semicolon + 1;
+            matrixVariables.put(name, getUrlPathHelper().decodeMatrixVariables(request, parseMatrixVariables(value, start)));
+        });
+        request.setAttribute(HandlerMapping.MATRIX_VARIABLES_ATTRIBUTE, matrixVariables);
+    }
+
+    private boolean declaresMatrixVariables(HandlerMethod handlerMethod) {
+        Boolean declares = matrixHandlers.get(handlerMethod.getMethod());
+        if (declares == null) {
+            declares = false;
+            for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+                if (parameter.hasParameterAnnotation(MatrixVariable.class)) {
+                    declares = true;
+                    break;
+                }
+            }
+            matrixHandlers.put(handlerMethod.getMethod(), declares);
+        }
+        return declares;
+    }
+
+    /**
+     * "name=a,b;q=1" --> {name=[a, b], q=[1]}, start부터 읽는다.
+     * 값이 없는 이름(";flag")은 빈 문자열 하나 (WebUtils.parseMatrixVariables와 같다.)
+     */
+    static MultiValueMap<String, String> parseMatrixVariables(String value, int start) {
+        MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+        int length = value.length();
+        int pairStart = start;
+        while (pairStart < length) {
+            int pairEnd = value.indexOf(';', pairStart);
+            if (pairEnd == -1) {
+                pairEnd = length;
+            }
+            int equals = value.indexOf('=', pairStart);
+            if (pairEnd == pairStart) {
+                // ";;" 빈 항목
+            } else if (equals == -1 || equals > pairEnd) {
+                result.add(value.substring(pairStart, pairEnd), "");
+            } else {
+                String name = value.substring(pairStart, equals);
+                // "name=" 처럼 값이 비어있으면 아무것도 넣지 않는다.
+                int valueStart = equals + 1;
+                while (valueStart < pairEnd) {
+                    int comma = value.indexOf(',', valueStart);
+                    int valueEnd = comma == -1 || comma > pairEnd ? pairEnd : comma;
+                    result.add(name, value.substring(valueStart, valueEnd));
+                    if (valueEnd == pairEnd) {
+                        break;
+                    }
+                    valueStart = valueEnd + 1;
+                    if (valueStart == pairEnd) {
+                        // "a,"처럼 쉼표로 끝나면 빈 값이 하나 더 있다.
+                        result.add(name, "");
+                    }
+                }
+            }
+            pairStart = pairEnd + 1;
+        }
+        return result;
+    }
+
+    private static UrlPathHelper rawPathHelper(UrlPathHelper urlPathHelper) {
+        UrlPathHelper rawPathHelper = new UrlPathHelper();
+        rawPathHelper.setUrlDecode(urlPathHelper.isUrlDecode());
+        rawPathHelper.setRemoveSemicolonContent(false);
+        return rawPathHelper;
+    }
+}
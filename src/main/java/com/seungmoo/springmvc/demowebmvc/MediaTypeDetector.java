@@ -0,0 +1,99 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 파일의 media type을 알아내는 공용 컴포넌트
+ * - Tika 객체는 thread-safe 하므로 하나만 만들어서 같이 쓴다. (요청마다 new Tika() 하지 않기)
+ * - 확장자로 먼저 판단하고, 확장자로 알 수 없을 때만 파일 내용을 읽어서(sniffing) 판단한다.
+ * - 결과는 path + 이름 + size + mtime 를 key로 LRU cache에 담아둔다. 파일이 바뀌면 key가 달라지므로 다시 판단한다.
+ */
+@Component
+public class MediaTypeDetector {
+
+    private final Tika tika = new Tika();
+
+    private final Map<CacheKey, String> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sniffs = new LongAdder();
+
+    @Autowired
+    public MediaTypeDetector(@Value("${file.media-type-cache.max-entries:1024}") int maxEntries) {
+        // accessOrder = true --> 가장 오래 안쓴 entry부터 제거 (LRU)
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<CacheKey, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, String> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public String detect(Path path) throws IOException {
+        return detect(path, path.getFileName().toString());
+    }
+
+    /**
+     * @param filename 확장자 판단에 사용할 이름 (저장된 파일 이름과 다를 수 있다.)
+     */
+    public String detect(Path path, String filename) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CacheKey key = new CacheKey(path.toAbsolutePath().toString(), filename, attributes.size(), attributes.lastModifiedTime().toMillis());
+
+        String mediaType = cache.get(key);
+        if (mediaType != null) {
+            hits.increment();
+            return mediaType;
+        }
+        misses.increment();
+
+        // 확장자로 판단 (파일 내용은 읽지 않음)
+        mediaType = tika.detect(filename);
+        if (MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(mediaType)) {
+            // 확장자가 없거나 모르는 확장자인 경우에만 파일 앞부분을 읽어서 판단
+            sniffs.increment();
+            mediaType = tika.detect(path);
+        }
+        cache.put(key, mediaType);
+        return mediaType;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // 파일 내용을 읽어서 판단한 횟수
+    public long getSniffCount() {
+        return sniffs.sum();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    @lombok.Value
+    private static class CacheKey {
+        String path;
+        String filename;
+        long size;
+        long lastModified;
+    }
+}
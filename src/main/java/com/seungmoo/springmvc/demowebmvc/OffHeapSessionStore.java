@@ -0,0 +1,208 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * session 내용을 direct ByteBuffer(heap 밖)에 저장하는 SessionStore (session.store.type=off-heap)
+ * - heap에는 session id와 buffer 참조만 남으므로 session이 많아져도 GC 대상이 늘지 않는다.
+ * - 같은 session을 다시 저장할 때 크기가 맞으면 buffer를 재사용한다. (direct memory 할당/해제는 비싸다.)
+ * - 만료된 session은 sweep-interval마다 한번에 지운다. 읽을 때도 만료됐으면 없는 것으로 본다.
+ * - 전체 크기(max-total-size)를 넘으면 만료된 것부터 지우고, 그래도 모자라면 가장 오래 안쓴(만료가 가장 가까운) session부터 지운다.
+ *   저장은 응답이 나간 뒤(StoredSessionFilter의 마지막)에 하므로 저장을 거부해도 client에게 알릴 방법이 없다.
+ *   session 하나가 max-total-size보다 큰 경우만 거부한다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "session.store", name = "type", havingValue = "off-heap")
+public class OffHeapSessionStore implements SessionStore, DisposableBean {
+
+    // buffer 크기를 이 단위로 올려서 잡는다. --> 조금 커져도 재사용된다.
+    private static final int ALIGN = 256;
+
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final long maxTotalBytes;
+    private final ScheduledExecutorService sweeper;
+
+    @Autowired
+    public OffHeapSessionStore(@Value("${session.store.max-total-size:64MB}") DataSize maxTotalSize,
+                               @Value("${session.store.sweep-interval:1m}") Duration sweepInterval) {
+        this.maxTotalBytes = maxTotalSize.toBytes();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public byte[] load(String id, Duration ttl) {
+        byte[][] result = new byte[1][];
+        long now = System.nanoTime();
+        // 같은 id의 save/sweep과 겹치지 않도록 map의 lock 안에서 복사한다.
+        sessions.computeIfPresent(id, (key, entry) -> {
+            if (entry.isExpired(now)) {
+                release(entry);
+                return null;
+            }
+            result[0] = entry.read();
+            entry.expiresAt = now + ttl.toNanos();
+            return entry;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void save(String id, byte[] data, Duration ttl) {
+        int capacity = align(data.length);
+        if (capacity > maxTotalBytes) {
+            throw new IllegalStateException("session is larger than the session store : " + data.length + " bytes");
+        }
+        // 다른 session을 지우는 것은 compute 밖에서 한다. (ConcurrentHashMap은 compute 안에서 다른 key를 바꿀 수 없다.)
+        if (totalBytes.get() + capacity > maxTotalBytes) {
+            sweep();
+            if (totalBytes.get() + capacity > maxTotalBytes) {
+                evict(capacity, id);
+            }
+        }
+        long now = System.nanoTime();
+        sessions.compute(id, (key, entry) -> {
+            if (entry == null || entry.buffer.capacity() < data.length) {
+                if (entry != null) {
+                    release(entry);
+                }
+                entry = new Entry(allocate(data.length));
+            }
+            entry.write(data);
+            entry.expiresAt = now + ttl.toNanos();
+            return entry;
+        });
+    }
+
+    @Override
+    public void delete(String id) {
+        Entry entry = sessions.remove(id);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    void sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (String id : sessions.keySet()) {
+            boolean[] expired = new boolean[1];
+            sessions.computeIfPresent(id, (key, entry) -> {
+                if (!entry.isExpired(now)) {
+                    return entry;
+                }
+                release(entry);
+                expired[0] = true;
+                return null;
+            });
+            if (expired[0]) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.debug("session store : {} expired sessions removed, {} left", removed, sessions.size());
+        }
+    }
+
+    // 가장 오래 안쓴 session부터 지운다. 매번 정렬하지 않도록 max-total-size의 10%만큼 여유를 더 만든다.
+    private void evict(int needed, String keepId) {
+        long target = maxTotalBytes - needed - maxTotalBytes / 10;
+        List<Map.Entry<String, Entry>> oldest = new ArrayList<>(sessions.entrySet());
+        oldest.sort(Comparator.comparingLong(session -> session.getValue().expiresAt));
+        int evicted = 0;
+        for (Map.Entry<String, Entry> session : oldest) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            if (session.getKey().equals(keepId)) {
+                continue;
+            }
+            if (sessions.remove(session.getKey(), session.getValue())) {
+                release(session.getValue());
+                evicted++;
+            }
+        }
+        log.warn("session store is full : {} sessions evicted, {} left", evicted, sessions.size());
+    }
+
+    private static int align(int length) {
+        return (length + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    private ByteBuffer allocate(int length) {
+        int capacity = align(length);
+        totalBytes.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private void release(Entry entry) {
+        totalBytes.addAndGet(-entry.buffer.capacity());
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+        sessions.clear();
+        totalBytes.set(0);
+    }
+
+    private static class Entry {
+        private final ByteBuffer buffer;
+        private int length;
+        private volatile long expiresAt;
+
+        Entry(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+
+        void write(byte[] data) {
+            buffer.clear();
+            buffer.put(data);
+            length = data.length;
+        }
+
+        byte[] read() {
+            byte[] data = new byte[length];
+            buffer.clear();
+            buffer.get(data);
+            return data;
+        }
+    }
+}
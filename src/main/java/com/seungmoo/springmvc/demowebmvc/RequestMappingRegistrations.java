@@ -0,0 +1,31 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * 기본 RequestMappingHandlerMapping 대신 쓸 mapping
+ * - MatrixVariableRequestMappingHandlerMapping : @MatrixVariable handler에만 matrix variable을 읽어준다.
+ * - request-mapping.match-cache.enabled=true 이면 path별 mapping 후보 cache까지 (CachingRequestMappingHandlerMapping)
+ * WebConfig.configurePathMatch 같은 설정은 spring-boot가 그대로 적용해준다.
+ */
+@Component
+public class RequestMappingRegistrations implements WebMvcRegistrations {
+
+    private final boolean matchCache;
+    private final int matchCacheMaxSize;
+
+    public RequestMappingRegistrations(@Value("${request-mapping.match-cache.enabled:false}") boolean matchCache,
+                                       @Value("${request-mapping.match-cache.max-size:10000}") int matchCacheMaxSize) {
+        this.matchCache = matchCache;
+        this.matchCacheMaxSize = matchCacheMaxSize;
+    }
+
+    @Override
+    public RequestMappingHandlerMapping getRequestMappingHandlerMapping() {
+        return matchCache ? new CachingRequestMappingHandlerMapping(matchCacheMaxSize)
+                          : new MatrixVariableRequestMappingHandlerMapping();
+    }
+}
@@ -0,0 +1,227 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 응답 본문이 실제로 몇 byte 나갔는지 세서 handler.response.size에 기록한다. (HandlerMetricsInterceptor)
+ * - Content-Length는 handler가 끝날 때까지 없는 경우가 많아서 (JSON, view, chunked 응답) 쓴 byte를 직접 센다.
+ * - GzipCompressionFilter보다 바깥에 두어서 압축한 뒤의 크기를 센다.
+ * - writer로 쓴 내용은 감싸지 않고 바로 넘기면서 문자 encoding 기준으로 byte 수만 센다. (따로 buffer를 두면 flush 하지 않은 내용이 남을 수 있다.)
+ * - Tomcat sendfile로 보낸 파일은 servlet을 거치지 않으므로 보낸 범위(start ~ end)로 더한다.
+ * - async 요청은 응답이 끝났을 때(AsyncListener.onComplete) 기록한다.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 40)
+public class ResponseSizeFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        CountingResponseWrapper wrapper = new CountingResponseWrapper(response);
+        filterChain.doFilter(request, wrapper);
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    record(request, wrapper);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            record(request, wrapper);
+        }
+    }
+
+    private static void record(HttpServletRequest request, CountingResponseWrapper wrapper) {
+        // handler method로 처리한 요청이면 HandlerMetricsInterceptor가 기록할 곳을 넣어둔다.
+        DistributionSummary responseSize = (DistributionSummary) request.getAttribute(HandlerMetricsInterceptor.RESPONSE_SIZE_ATTRIBUTE);
+        if (responseSize != null) {
+            responseSize.record(wrapper.getByteCount() + sendfileLength(request));
+        }
+    }
+
+    private static long sendfileLength(HttpServletRequest request) {
+        if (request.getAttribute(FileSender.SENDFILE_FILENAME_ATTR) == null) {
+            return 0;
+        }
+        return (Long) request.getAttribute(FileSender.SENDFILE_END_ATTR) - (Long) request.getAttribute(FileSender.SENDFILE_START_ATTR);
+    }
+
+    static final class CountingResponseWrapper extends HttpServletResponseWrapper {
+
+        private long byteCount;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        CountingResponseWrapper(HttpServletResponse response) {
+            super(response);
+        }
+
+        long getByteCount() {
+            return byteCount;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                // getWriter 이후에는 character encoding이 바뀌지 않는다.
+                writer = new PrintWriter(new CountingWriter(super.getWriter(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        // commit 전이면 container buffer에 있던 내용이 모두 버려진다.
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            byteCount = 0;
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            byteCount = 0;
+        }
+
+        private final class CountingOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+
+            CountingOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                delegate.write(b);
+                byteCount++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                delegate.write(b, off, len);
+                byteCount += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                delegate.setWriteListener(writeListener);
+            }
+        }
+
+        private final class CountingWriter extends Writer {
+
+            private final Writer delegate;
+            private final boolean utf8;
+            private final boolean singleByte;
+            private final Charset charset;
+
+            CountingWriter(Writer delegate, Charset charset) {
+                this.delegate = delegate;
+                this.charset = charset;
+                this.utf8 = StandardCharsets.UTF_8.equals(charset);
+                this.singleByte = !utf8 && charset.newEncoder().maxBytesPerChar() == 1;
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                delegate.write(cbuf, off, len);
+                byteCount += encodedLength(CharBuffer.wrap(cbuf, off, len));
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                delegate.write(str, off, len);
+                byteCount += encodedLength(CharBuffer.wrap(str, off, off + len));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            private long encodedLength(CharBuffer chars) {
+                if (singleByte) {
+                    return chars.remaining();
+                }
+                if (!utf8) {
+                    return charset.encode(chars).remaining();
+                }
+                // UTF-8은 encode 하지 않고 문자 범위로 센다. (surrogate pair는 high 쪽에서 4 byte)
+                long length = 0;
+                for (int i = chars.position(); i < chars.limit(); i++) {
+                    char c = chars.get(i);
+                    if (c < 0x80) {
+                        length++;
+                    } else if (c < 0x800) {
+                        length += 2;
+                    } else if (Character.isHighSurrogate(c)) {
+                        length += 4;
+                    } else if (!Character.isLowSurrogate(c)) {
+                        length += 3;
+                    }
+                }
+                return length;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import java.time.Duration;
+
+/**
+ * HttpSession 내용을 JVM heap 밖에 저장하는 저장소 (StoredSessionFilter가 사용)
+ * - 값은 StoredSession이 직렬화한 byte[] 그대로 저장한다. 저장소는 내용을 몰라도 된다.
+ * - ttl 동안 읽거나 쓰지 않으면 사라진다.
+ * - 기본 구현은 OffHeapSessionStore (한 JVM 안, direct memory).
+ *   여러 대로 띄우려면 Redis 같은 외부 저장소로 이 interface를 구현하면 된다.
+ */
+public interface SessionStore {
+
+    /**
+     * @return 저장된 내용, 없거나 만료됐으면 null. 읽으면 만료 시간이 ttl만큼 다시 늘어난다.
+     */
+    byte[] load(String id, Duration ttl);
+
+    void save(String id, byte[] data, Duration ttl);
+
+    void delete(String id);
+}
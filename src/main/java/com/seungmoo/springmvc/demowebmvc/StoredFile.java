@@ -0,0 +1,21 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Value;
+
+import java.nio.file.Path;
+
+// 저장이 끝난 업로드 파일 정보
+@Value
+public class StoredFile {
+    String name;
+
+    // 서버의 저장 경로는 응답으로 내보내지 않는다.
+    @JsonIgnore
+    Path path;
+
+    long size;
+
+    // 업로드 하면서 계산한 SHA-256 (hex)
+    String sha256;
+}
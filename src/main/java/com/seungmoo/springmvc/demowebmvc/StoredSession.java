@@ -0,0 +1,305 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SessionStore에서 꺼낸 HttpSession (요청 하나 동안만 heap에 있다.)
+ * - setAttribute/removeAttribute가 있었으면 요청이 끝날 때 StoredSessionFilter가 다시 저장한다.
+ * - 직렬화 형식 : [version][creationTime][maxInactiveInterval][attribute 수] + attribute마다 [name][type][값]
+ *   자주 쓰는 타입(String, 숫자, LocalDateTime, Event)은 값만 쓰고, 나머지는 Java 직렬화로 쓴다.
+ */
+class StoredSession implements HttpSession {
+
+    private static final byte VERSION = 1;
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte LOCAL_DATE_TIME = 5;
+    private static final byte EVENT = 6;
+    private static final byte SERIALIZED = 7;
+
+    private String id;
+    private final long creationTime;
+    private final long lastAccessedTime;
+    private final boolean isNew;
+    private final ServletContext servletContext;
+    private int maxInactiveInterval;
+    private final Map<String, Object> attributes;
+
+    private boolean dirty;
+    private boolean invalidated;
+
+    private StoredSession(String id, long creationTime, int maxInactiveInterval, Map<String, Object> attributes,
+                          boolean isNew, ServletContext servletContext) {
+        this.id = id;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = System.currentTimeMillis();
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.attributes = attributes;
+        this.isNew = isNew;
+        this.servletContext = servletContext;
+    }
+
+    static StoredSession create(String id, int maxInactiveInterval, ServletContext servletContext) {
+        StoredSession session = new StoredSession(id, System.currentTimeMillis(), maxInactiveInterval,
+                new HashMap<>(), true, servletContext);
+        session.dirty = true;
+        return session;
+    }
+
+    static StoredSession decode(String id, byte[] data, ServletContext servletContext) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long creationTime = in.readLong();
+            int maxInactiveInterval = in.readInt();
+            int count = in.readUnsignedShort();
+            Map<String, Object> attributes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                attributes.put(in.readUTF(), readValue(in));
+            }
+            return new StoredSession(id, creationTime, maxInactiveInterval, attributes, false, servletContext);
+        } catch (IOException | ClassNotFoundException ex) {
+            // 형식이 바뀌었거나 class가 없어진 경우 --> 없던 session으로 본다.
+            return null;
+        }
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(creationTime);
+            out.writeInt(maxInactiveInterval);
+            out.writeShort(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                out.writeUTF(attribute.getKey());
+                writeValue(out, attribute.getKey(), attribute.getValue());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream out, String name, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+            out.writeLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (value.getClass() == Event.class) {
+            out.writeByte(EVENT);
+            ((Event) value).writeTo(out);
+        } else if (isStorable(value)) {
+            // FlashMap(redirect attribute) 같은 것, 안에 Event가 있으면 Event.writeExternal로 쓰인다.
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(serialized)) {
+                objectOut.writeObject(value);
+            }
+            out.writeByte(SERIALIZED);
+            out.writeInt(serialized.size());
+            serialized.writeTo(out);
+        } else {
+            throw new IllegalArgumentException("session attribute '" + name + "' is not serializable : " + value.getClass().getName());
+        }
+    }
+
+    // 저장은 요청이 끝날 때 하므로, 저장할 수 없는 값은 setAttribute 할 때 (handler 안에서) 거부한다.
+    private static boolean isStorable(Object value) {
+        return value instanceof Serializable;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.of(LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+            case EVENT:
+                Event event = new Event();
+                event.readFrom(in);
+                return event;
+            case SERIALIZED:
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                    return objectIn.readObject();
+                }
+            default:
+                throw new IOException("unknown session attribute type : " + type);
+        }
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    boolean isInvalidated() {
+        return invalidated;
+    }
+
+    void changeId(String id) {
+        this.id = id;
+        this.dirty = true;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getCreationTime() {
+        checkValid();
+        return creationTime;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+        checkValid();
+        return lastAccessedTime;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return servletContext;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+        maxInactiveInterval = interval;
+        dirty = true;
+    }
+
+    @Override
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    @Override
+    @Deprecated
+    public javax.servlet.http.HttpSessionContext getSessionContext() {
+        return null;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        checkValid();
+        return attributes.get(name);
+    }
+
+    @Override
+    @Deprecated
+    public Object getValue(String name) {
+        return getAttribute(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        checkValid();
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    @Deprecated
+    public String[] getValueNames() {
+        checkValid();
+        return attributes.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        checkValid();
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        if (!isStorable(value)) {
+            throw new IllegalArgumentException("session attribute '" + name + "' is not serializable : " + value.getClass().getName());
+        }
+        attributes.put(name, value);
+        dirty = true;
+    }
+
+    @Override
+    @Deprecated
+    public void putValue(String name, Object value) {
+        setAttribute(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        checkValid();
+        if (attributes.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void removeValue(String name) {
+        removeAttribute(name);
+    }
+
+    @Override
+    public void invalidate() {
+        checkValid();
+        invalidated = true;
+        attributes.clear();
+    }
+
+    @Override
+    public boolean isNew() {
+        checkValid();
+        return isNew;
+    }
+
+    private void checkValid() {
+        if (invalidated) {
+            throw new IllegalStateException("session is invalidated : " + id);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * HttpSession을 Tomcat(JVM heap) 대신 SessionStore에 두는 filter (session.store.type=off-heap)
+ * - request.getSession()이 SessionStore에서 꺼낸 StoredSession을 돌려준다.
+ *   @SessionAttributes("event"), SessionStatus, redirect flash attribute, HttpSession 파라미터 모두 그대로 동작한다.
+ * - session id는 cookie(session.store.cookie-name)로 주고 받는다.
+ * - 요청이 끝나면 바뀐 session만 다시 저장한다. 바뀌지 않았으면 load할 때 만료 시간만 늘어난다.
+ * - session을 쓰지 않는 요청은 SessionStore를 건드리지 않는다. (getSession을 부를 때 처음 읽는다.)
+ * - 저장은 응답이 나간 뒤에 하므로 여기서 실패해도 client에게 알릴 수 없다. --> 예외를 던지지 않고 log만 남긴다.
+ *   (직렬화할 수 없는 값은 setAttribute 할 때 거부하고, 저장소가 가득 차면 오래된 session을 지운다.)
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 50)
+@ConditionalOnProperty(prefix = "session.store", name = "type", havingValue = "off-heap")
+public class StoredSessionFilter extends OncePerRequestFilter {
+
+    private final SessionStore sessionStore;
+    private final String cookieName;
+    private final Duration timeout;
+
+    @Autowired
+    public StoredSessionFilter(SessionStore sessionStore,
+                               @Value("${session.store.cookie-name:SESSION}") String cookieName,
+                               @Value("${server.servlet.session.timeout:30m}") Duration timeout) {
+        this.sessionStore = sessionStore;
+        this.cookieName = cookieName;
+        this.timeout = timeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilterErrorDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        StoredSessionRequest wrapped = new StoredSessionRequest(request, response);
+        try {
+            filterChain.doFilter(wrapped, response);
+        } finally {
+            wrapped.commit();
+        }
+    }
+
+    private final class StoredSessionRequest extends HttpServletRequestWrapper {
+
+        private final HttpServletResponse response;
+        private String requestedId;
+        private boolean requestedIdRead;
+        private StoredSession session;
+        // 요청 중에 id가 바뀌면(changeSessionId) 예전 것은 지운다.
+        private String replacedId;
+
+        StoredSessionRequest(HttpServletRequest request, HttpServletResponse response) {
+            super(request);
+            this.response = response;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            if (session != null && !session.isInvalidated()) {
+                return session;
+            }
+            if (session == null && getRequestedSessionId() != null) {
+                byte[] data = sessionStore.load(requestedId, timeout);
+                session = data == null ? null : StoredSession.decode(requestedId, data, getServletContext());
+                if (session != null) {
+                    return session;
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            if (session != null) {
+                // 이번 요청에서 invalidate 하고 다시 만드는 경우 (로그인 등)
+                sessionStore.delete(session.getId());
+            }
+            session = StoredSession.create(UUID.randomUUID().toString(), (int) timeout.getSeconds(), getServletContext());
+            writeCookie(session.getId(), false);
+            return session;
+        }
+
+        @Override
+        public String changeSessionId() {
+            HttpSession current = getSession(false);
+            if (current == null) {
+                throw new IllegalStateException("no session to change id");
+            }
+            if (replacedId == null) {
+                replacedId = session.getId();
+            }
+            session.changeId(UUID.randomUUID().toString());
+            writeCookie(session.getId(), false);
+            return session.getId();
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            if (!requestedIdRead) {
+                Cookie cookie = WebUtils.getCookie((HttpServletRequest) getRequest(), cookieName);
+                requestedId = cookie == null ? null : cookie.getValue();
+                requestedIdRead = true;
+            }
+            return requestedId;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            HttpSession current = getSession(false);
+            return current != null && current.getId().equals(getRequestedSessionId());
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return getRequestedSessionId() != null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return false;
+        }
+
+        void commit() {
+            if (replacedId != null) {
+                sessionStore.delete(replacedId);
+                replacedId = null;
+            }
+            if (session == null) {
+                return;
+            }
+            if (session.isInvalidated()) {
+                sessionStore.delete(session.getId());
+                writeCookie(session.getId(), true);
+                session = null;
+            } else if (session.isDirty()) {
+                try {
+                    sessionStore.save(session.getId(), session.encode(), Duration.ofSeconds(session.getMaxInactiveInterval()));
+                } catch (RuntimeException ex) {
+                    log.error("failed to save session {}", session.getId(), ex);
+                }
+            }
+        }
+
+        private void writeCookie(String value, boolean expire) {
+            // browser가 닫힐 때까지 유지되는 cookie로 준다. 만료는 저장소의 ttl로 한다.
+            ResponseCookie.ResponseCookieBuilder cookie = ResponseCookie.from(cookieName, value)
+                    .path(getContextPath() + "/")
+                    .httpOnly(true)
+                    .sameSite("Lax");
+            if (expire) {
+                cookie.maxAge(0);
+            }
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.build().toString());
+        }
+    }
+}
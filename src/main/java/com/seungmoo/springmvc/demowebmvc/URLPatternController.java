@@ -2,7 +2,9 @@ package com.seungmoo.springmvc.demowebmvc;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.server.Session;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.util.MultiValueMap;
@@ -15,10 +17,12 @@ import org.springframework.web.bind.support.SessionStatus;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * 핸들러 메소드 2부:URL 패턴 공부하기
@@ -68,6 +72,17 @@ public class URLPatternController {
     @Autowired
     EventValidator eventValidator;
 
+    @Autowired
+    EventRepository eventRepository;
+
+    // 목록 화면을 렌더링하면서 몇 개마다 응답을 내보낼지 (FlushingIterable)
+    @Value("${event.list.flush-every:100}")
+    int listFlushEvery;
+
+    // 목록 화면 한 번에 보여줄 저장소의 Event 수 (나머지는 nextCursor로 다음 화면에서)
+    @Value("${event.list.page-size:100}")
+    int listPageSize;
+
     /*
     // 실은 binder는 계속 써왔던 것임, Request의 parameter를 pathVariable, RequestBody, model 등등으로 binding 했던 것임
     // return type은 반드시 void
@@ -116,14 +131,15 @@ public class URLPatternController {
     // @PathVariable parameter의 이름은 웬만하면 URI의 PathVariable과 맞춰주는게 보기 좋다.
     @GetMapping("/events/{id}")
     @ResponseBody
-    public Event getEvent(@PathVariable("id") Optional<Integer> idValue, @MatrixVariable Optional<String> name) { // {id}값이 Integer로 자동 Type Conversion 된다.
+    public ResponseEntity<Event> getEvent(@PathVariable("id") Optional<Integer> idValue, @MatrixVariable Optional<String> name) { // {id}값이 Integer로 자동 Type Conversion 된다.
         // public Event getEvent(@PathVariable(required = false) Integer id) { // Optional과 동일하게 기능한다.
         Integer optionalId = idValue.filter(i -> i > 0).orElse(1);
-        String optionalName = name.filter(s -> !s.isEmpty()).orElse("NO_NAME");
-        Event event = new Event();
-        event.setId(optionalId);
-        event.setName(optionalName);
-        return event;
+        Optional<String> optionalName = name.filter(s -> !s.isEmpty());
+        // 저장된 Event를 돌려준다. matrix variable로 name을 주면 이름까지 같아야 한다. (ex. /events/1;name=seungmoo)
+        return eventRepository.findById(optionalId)
+                .filter(event -> !optionalName.isPresent() || optionalName.get().equals(event.getName()))
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     // GET /owners/42;q=11/pets/21;q=22
@@ -268,7 +284,11 @@ public class URLPatternController {
                                     //@RequestParam String name, // RedirectAttribute 받기
                                     //@RequestParam Integer limit, // RedirectAttribute 받기
                                     Model model,
-                                    @SessionAttribute LocalDateTime visitTime) {
+                                    // VisitTimeInterceptor가 session / cookie 어디에 저장하든 request attribute로 넘겨준다.
+                                    @RequestAttribute LocalDateTime visitTime,
+                                    // 이전 화면의 nextCursor, 처음이면 없음
+                                    @RequestParam(required = false) String cursor,
+                                    HttpServletResponse response) {
 
         // 위에서 @ModelAttribute("newEvent") Event event 파라미터 받을 필요 없이
         // model을 사용해서 session attribute를 꺼낼 수 있다.
@@ -280,12 +300,16 @@ public class URLPatternController {
         evt.setName("spring");
         evt.setLimit(10);
 
-        List<Event> eventList = new ArrayList<>();
-        eventList.add(evt);
-        eventList.add(newEvent);
+        // 저장소의 Event는 전부가 아니라 listPageSize개씩 이름 순서로 보여준다. --> 건수가 많아도 화면 하나의 크기는 일정
+        // view가 th:each로 하나씩 꺼내면서 렌더링하고, FlushingIterable이 중간중간 응답을 내보낸다.
+        EventPage page = eventRepository.findByNamePrefix("", cursor, listPageSize);
+        Stream<Event> head = cursor == null ? Stream.of(evt, newEvent).filter(Objects::nonNull) : Stream.empty();
+        Stream<Event> events = Stream.concat(head, page.getEvents().stream());
+        Iterable<Event> eventList = events::iterator;
+        model.addAttribute("nextCursor", page.getNextCursor());
 
         // "/events/list" View 에다가 아래 MODEL 정보를 Rendering
-        model.addAttribute(eventList);
+        model.addAttribute("eventList", new FlushingIterable<>(eventList, response, listFlushEvery));
         // GET 요청 처리 후 마지막으로 "/events/list"를 보여준다.
         return "/events/list";
     }
@@ -300,7 +324,8 @@ public class URLPatternController {
     @GetMapping("/events/form/name")
     public String eventsFormName(Model model,
                                  // @SessionAttribute로 Session값 꺼낼 수 있다. 변수name은 sessionAttr name과 맞춰주면 좋음
-                                 @SessionAttribute(value = "visitTime") LocalDateTime visitTime)
+                                 // visitTime은 session에 없을 수도 있으므로(visit-time.store=cookie) VisitTimeInterceptor가 넣어준 request attribute로 받는다.
+                                 @RequestAttribute(value = "visitTime") LocalDateTime visitTime)
     {
         log.info(visitTime.toString());
         model.addAttribute("event", new Event());
@@ -313,11 +338,11 @@ public class URLPatternController {
             @Validated(value = Event.ValidateAll.class) @ModelAttribute Event event,
             BindingResult bindingResult,
             // 위의 @SessionAttribute를 쓰지 않고 raw하게 HttpSession을 쓸 수 있다.
-            HttpSession httpSession)
+            HttpSession httpSession,
+            @RequestAttribute LocalDateTime visitTime)
     {
         // BUT HttpSession.getAttribute는 Object type으로 리턴하므로
         // Type Conversion 작업이 추가로 더 필요하게 된다. --> @SessionAttribute가 편하니까 이거 쓰자 그냥
-        LocalDateTime visitTime = (LocalDateTime) httpSession.getAttribute("visitTime");
         log.info(visitTime.toString());
         Event newEvt = (Event) httpSession.getAttribute("event");
         log.info("SessionAttribute name in post : " + newEvt.getName());
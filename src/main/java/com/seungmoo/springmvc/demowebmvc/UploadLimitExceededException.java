@@ -0,0 +1,7 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+public class UploadLimitExceededException extends RuntimeException {
+    public UploadLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+public class UploadNotFoundException extends RuntimeException {
+    public UploadNotFoundException(String uploadId) {
+        super("No such upload : " + uploadId);
+    }
+}
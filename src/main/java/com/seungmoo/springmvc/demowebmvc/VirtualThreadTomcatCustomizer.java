@@ -0,0 +1,58 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tomcat 요청 처리를 virtual thread에서 (spring.threads.virtual.enabled=true 일 때만)
+ * - 기본 Tomcat은 worker thread pool(server.tomcat.threads.max, 기본 200개) 안에서 요청을 처리한다.
+ *   파일 업로드/다운로드처럼 I/O를 기다리는 요청이 pool 크기만큼 쌓이면 나머지 요청은 줄을 서야 한다.
+ * - virtual thread는 요청마다 하나씩 만들어도 가볍고, blocking I/O를 기다리는 동안 carrier thread를 놓아준다.
+ *   --> 동시에 처리할 수 있는 요청 수가 thread pool 크기가 아니라 server.tomcat.max-connections로 정해진다.
+ * - Java 21 이상에서만 동작한다. 빌드는 Java 8 기준이므로 Executors.newVirtualThreadPerTaskExecutor()를 reflection으로 찾는다.
+ *   없으면(Java 21 미만) 경고만 남기고 기본 thread pool을 그대로 쓴다.
+ * - Tomcat은 밖에서 넣어준 executor를 종료하지 않으므로 여기서 닫는다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "spring.threads.virtual", name = "enabled", havingValue = "true")
+public class VirtualThreadTomcatCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, DisposableBean {
+
+    private final ExecutorService executor;
+
+    public VirtualThreadTomcatCustomizer() {
+        this.executor = newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler) {
+        if (executor != null) {
+            protocolHandler.setExecutor(executor);
+            log.info("tomcat requests are handled on virtual threads");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            log.warn("virtual threads are not available on Java {}, keeping the tomcat thread pool",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
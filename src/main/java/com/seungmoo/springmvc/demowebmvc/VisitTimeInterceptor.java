@@ -1,19 +1,133 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.WebUtils;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
 
+/**
+ * 처음 방문한 시간을 기억해서 request attribute "visitTime"(LocalDateTime)으로 넘겨준다.
+ * visit-time.store
+ * - session : HttpSession에 저장 (예전 방식, session과 JSESSIONID가 생긴다.)
+ * - cookie  : 서명한 cookie에 저장 --> 서버에 아무것도 남지 않으므로 session이 생기지 않고 어느 인스턴스로 가도 된다.
+ *   cookie 값 : [방문 시간 epoch millis].[HMAC-SHA256 서명, base64url]
+ *   서명이 맞지 않는 cookie(변조, 다른 secret)는 무시하고 새로 발급한다.
+ *   인스턴스가 여러 대면 visit-time.cookie.secret을 같게 줘야 한다. (없으면 기동할 때마다 새로 만든다.)
+ */
+@Slf4j
+@Component
 public class VisitTimeInterceptor implements HandlerInterceptor {
+
+    static final String VISIT_TIME = "visitTime";
+    private static final String HMAC = "HmacSHA256";
+
+    private final boolean cookieStore;
+    private final String cookieName;
+    private final Duration cookieMaxAge;
+    private final SecretKeySpec secret;
+
+    @Autowired
+    public VisitTimeInterceptor(@Value("${visit-time.store:session}") String store,
+                                @Value("${visit-time.cookie.name:VISIT}") String cookieName,
+                                @Value("${visit-time.cookie.max-age:30d}") Duration cookieMaxAge,
+                                @Value("${visit-time.cookie.secret:}") String secret) {
+        if (!store.equals("session") && !store.equals("cookie")) {
+            throw new IllegalArgumentException("visit-time.store must be session or cookie : " + store);
+        }
+        this.cookieStore = store.equals("cookie");
+        this.cookieName = cookieName;
+        this.cookieMaxAge = cookieMaxAge;
+        byte[] key;
+        if (StringUtils.hasText(secret)) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            if (cookieStore) {
+                log.warn("visit-time.cookie.secret is not set, visit cookies are valid only for this instance until restart");
+            }
+        }
+        this.secret = new SecretKeySpec(key, HMAC);
+    }
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        request.setAttribute(VISIT_TIME, cookieStore ? fromCookie(request, response) : fromSession(request));
+        return true;
+    }
+
+    private LocalDateTime fromSession(HttpServletRequest request) {
         HttpSession session = request.getSession();
-        if(session.getAttribute("visitTime") == null) {
-            session.setAttribute("visitTime", LocalDateTime.now());
+        if(session.getAttribute(VISIT_TIME) == null) {
+            session.setAttribute(VISIT_TIME, LocalDateTime.now());
+        }
+        return (LocalDateTime) session.getAttribute(VISIT_TIME);
+    }
+
+    private LocalDateTime fromCookie(HttpServletRequest request, HttpServletResponse response) {
+        Cookie cookie = WebUtils.getCookie(request, cookieName);
+        Long visitMillis = cookie == null ? null : verify(cookie.getValue());
+        if (visitMillis == null) {
+            visitMillis = System.currentTimeMillis();
+            String value = visitMillis + "." + sign(Long.toString(visitMillis));
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(cookieName, value)
+                    .path("/")
+                    .maxAge(cookieMaxAge)
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .build().toString());
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(visitMillis), ZoneId.systemDefault());
+    }
+
+    // 서명이 맞으면 방문 시간, 아니면 null
+    Long verify(String value) {
+        int dot = value.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = value.substring(0, dot);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        // 시간 차이로 서명을 맞춰보지 못하도록 끝까지 비교한다.
+        if (!MessageDigest.isEqual(expected, value.substring(dot + 1).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        try {
+            return Long.parseLong(payload);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(secret);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException ex) {
+            // 모든 JVM은 HmacSHA256을 지원해야 한다.
+            throw new IllegalStateException(ex);
         }
-        return true;
     }
 }
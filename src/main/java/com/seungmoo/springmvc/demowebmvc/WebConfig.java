@@ -1,26 +1,30 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
-import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-import org.springframework.web.util.UrlPathHelper;
 
 // 스프링부트에서 웹 Config하려면 @Configuration + WebMvcConfigurer implement
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
-    // Matrix Binding을 하려면 따로 WebConfig에서 설정 필요하다. (스프링부트에서 디폴트 지원 ㄴㄴ)
-    @Override
-    public void configurePathMatch(PathMatchConfigurer configurer) {
-        UrlPathHelper urlPathHelper = new UrlPathHelper();
-        // semi-colon을 없애게 되면 Matrix Binding이 안되기 때문에 아래 설정 필수!
-        urlPathHelper.setRemoveSemicolonContent(false);
-        configurer.setUrlPathHelper(urlPathHelper);
-    }
+    // Matrix Binding을 하려면 따로 설정 필요하다. (스프링부트에서 디폴트 지원 ㄴㄴ)
+    // 예전에는 여기서 UrlPathHelper.setRemoveSemicolonContent(false)를 모든 요청에 걸었는데
+    // 이제 @MatrixVariable을 쓰는 handler만 MatrixVariableRequestMappingHandlerMapping이 따로 읽어준다. (RequestMappingRegistrations)
+
+    @Autowired
+    private VisitTimeInterceptor visitTimeInterceptor;
+
+    @Autowired
+    private HandlerMetricsInterceptor handlerMetricsInterceptor;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new VisitTimeInterceptor());
+        // 다른 interceptor 시간까지 포함하도록 제일 먼저 등록한다.
+        registry.addInterceptor(handlerMetricsInterceptor);
+        // visitTime을 쓰는 곳은 /url_pattern 화면뿐이다.
+        // 모든 요청에 걸면 API, 파일 다운로드 요청마다 session(JSESSIONID)이 생긴다.
+        registry.addInterceptor(visitTimeInterceptor).addPathPatterns("/url_pattern/**");
     }
 }
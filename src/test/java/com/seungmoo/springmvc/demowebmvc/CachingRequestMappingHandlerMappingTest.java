@@ -0,0 +1,66 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// cache를 켜도 SampleController의 mapping이 그대로 골라지는지 확인한다.
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "request-mapping.match-cache.enabled=true")
+@AutoConfigureMockMvc
+public class CachingRequestMappingHandlerMappingTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    RequestMappingHandlerMapping requestMappingHandlerMapping;
+
+    @Test
+    public void sameHandlersAsDefaultMapping() throws Exception {
+        assertTrue(requestMappingHandlerMapping instanceof CachingRequestMappingHandlerMapping);
+
+        // 두 번째 miss부터 cache에 들어가므로 세 번씩 보내서 cache에 있을 때도 같은지 본다.
+        for (int i = 0; i < 3; i++) {
+            // 정규식 {name:[a-z]+}가 /** 보다 구체적이다.
+            mockMvc.perform(get("/hi/multipath/seungmoo"))
+                    .andExpect(handler().methodName("helloRest"));
+            mockMvc.perform(post("/hello/multipath/123"))
+                    .andExpect(handler().methodName("helloPost"));
+            // meta annotation
+            mockMvc.perform(get("/hello/custom"))
+                    .andExpect(handler().methodName("helloCustom"));
+            // 같은 path, 다른 조건(consumes) --> 415
+            mockMvc.perform(get("/hello/reqJson"))
+                    .andExpect(status().isUnsupportedMediaType());
+            // 등록되지 않은 method --> 405
+            mockMvc.perform(delete("/hello/custom"))
+                    .andExpect(status().isMethodNotAllowed());
+            // semicolon(matrix variable)이 남아있는 path
+            mockMvc.perform(get("/url_pattern/events/1;name=seungmoo"))
+                    .andExpect(handler().methodName("getEvent"));
+        }
+        assertTrue(((CachingRequestMappingHandlerMapping) requestMappingHandlerMapping).getCacheSize() > 0);
+    }
+
+    @Test
+    public void uniquePathsAreNotCached() throws Exception {
+        CachingRequestMappingHandlerMapping mapping = (CachingRequestMappingHandlerMapping) requestMappingHandlerMapping;
+        int before = mapping.getCacheSize();
+        // /events/{id}처럼 매번 다른 path는 한번씩만 보이므로 cache에 들어가지 않는다.
+        for (char c = 'a'; c <= 'z'; c++) {
+            mockMvc.perform(get("/hi/multipath/unique" + c))
+                    .andExpect(handler().methodName("helloRest"));
+        }
+        assertEquals(before, mapping.getCacheSize());
+    }
+}
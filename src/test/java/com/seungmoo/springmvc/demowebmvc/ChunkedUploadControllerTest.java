@@ -0,0 +1,77 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ChunkedUploadControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void chunkedUpload() throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+        String initResponse = mockMvc.perform(post("/file/uploads")
+                                            .param("filename", "chunked.txt")
+                                            .param("size", "10")
+                                            .param("chunkSize", "4"))
+                                    .andDo(print())
+                                    .andExpect(status().isCreated())
+                                    .andExpect(header().exists("Location"))
+                                    .andExpect(jsonPath("chunkCount").value(3))
+                                    .andReturn().getResponse().getContentAsString();
+        JsonNode upload = objectMapper.readTree(initResponse);
+        String uploadUri = "/file/uploads/" + upload.get("uploadId").asText();
+
+        // chunk 순서는 상관 없다.
+        mockMvc.perform(put(uploadUri + "/chunks/2").content(new byte[]{'8', '9'}))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(put(uploadUri + "/chunks/0").content(new byte[]{'0', '1', '2', '3'}))
+                .andExpect(status().isNoContent());
+
+        // 크기가 맞지 않는 chunk --> 400
+        mockMvc.perform(put(uploadUri + "/chunks/1").content(new byte[]{'4', '5'}))
+                .andExpect(status().isBadRequest());
+
+        // 아직 chunk 1을 못 받았으므로 complete 할 수 없다.
+        mockMvc.perform(post(uploadUri + "/complete"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get(uploadUri))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("receivedChunks").value(2))
+                .andExpect(jsonPath("missingChunks[0]").value(1));
+
+        mockMvc.perform(put(uploadUri + "/chunks/1").content(new byte[]{'4', '5', '6', '7'}))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(post(uploadUri + "/complete"))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("size").value(10))
+                .andExpect(jsonPath("sha256").value(AbstractFileStore.toHex(MessageDigest.getInstance("SHA-256").digest(content))));
+
+        // complete 이후에는 upload 정보가 사라진다.
+        mockMvc.perform(get(uploadUri))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,235 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ChunkedUploadServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writeChunksInParallel() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        ChunkedUploadService service = new ChunkedUploadService(fileStore, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofHours(1),
+                Duration.ofMinutes(10), 100, DataSize.ofMegabytes(1));
+
+        // bitmap의 long 경계(64개)를 넘도록 chunk를 130개 만든다.
+        byte[] content = new byte[4096 * 129 + 100];
+        new Random(0).nextBytes(content);
+        ChunkedUpload upload = service.init("parallel.bin", content.length, 4096L);
+        assertEquals(130, upload.getChunkCount());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = upload.getChunkCount() - 1; i >= 0; i--) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    int from = (int) upload.chunkOffset(index);
+                    int to = (int) (from + upload.chunkLength(index));
+                    service.writeChunk(upload.getUploadId(), index,
+                            new ByteArrayInputStream(Arrays.copyOfRange(content, from, to)), to - from);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(upload.isComplete());
+        assertTrue(upload.getMissingChunks().isEmpty());
+
+        StoredFile storedFile = service.complete(upload.getUploadId());
+        assertArrayEquals(content, Files.readAllBytes(storedFile.getPath()));
+        assertFalse(Files.exists(upload.getPartFile()));
+    }
+
+    @Test
+    public void resendChunkIsIdempotent() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        ChunkedUploadService service = new ChunkedUploadService(fileStore, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofHours(1),
+                Duration.ofMinutes(10), 100, DataSize.ofMegabytes(1));
+
+        ChunkedUpload upload = service.init("resend.bin", 3, 2L);
+        service.writeChunk(upload.getUploadId(), 0, new ByteArrayInputStream(new byte[]{1, 2}), -1);
+        service.writeChunk(upload.getUploadId(), 0, new ByteArrayInputStream(new byte[]{1, 2}), -1);
+
+        assertEquals(1, upload.getReceivedChunks());
+        assertFalse(upload.isComplete());
+    }
+
+    @Test
+    public void completeWaitsForChunkInProgress() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        ChunkedUploadService service = new ChunkedUploadService(fileStore, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofHours(1),
+                Duration.ofMinutes(10), 100, DataSize.ofMegabytes(1));
+        ChunkedUpload upload = service.init("slow.bin", 4, 2L);
+        service.writeChunk(upload.getUploadId(), 0, new ByteArrayInputStream(new byte[]{1, 2}), 2);
+
+        // 두번째 chunk는 1 byte 쓰고 멈춰 있는다.
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new SequenceInputStream(new ByteArrayInputStream(new byte[]{3}), new InputStream() {
+            private boolean sent;
+
+            @Override
+            public int read() throws IOException {
+                if (sent) {
+                    return -1;
+                }
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                sent = true;
+                return 4;
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> chunk = executor.submit(() -> {
+                service.writeChunk(upload.getUploadId(), 1, slow, 2);
+                return null;
+            });
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            Future<StoredFile> complete = executor.submit(() -> service.complete(upload.getUploadId()));
+
+            // chunk를 쓰는 동안에는 complete가 끝나지 않는다.
+            Thread.sleep(200);
+            assertFalse(complete.isDone());
+            release.countDown();
+
+            chunk.get(5, TimeUnit.SECONDS);
+            StoredFile storedFile = complete.get(5, TimeUnit.SECONDS);
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, Files.readAllBytes(storedFile.getPath()));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertEquals(0, service.getOpenUploads());
+        assertEquals(0, service.getReservedBytes());
+    }
+
+    @Test
+    public void failedStoreKeepsPartFile() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        FileStore failingOnce = mock(FileStore.class);
+        given(failingOnce.getMaxSize()).willReturn(DataSize.ofMegabytes(1).toBytes());
+        given(failingOnce.store(anyString(), any(Path.class)))
+                .willThrow(new IOException("disk full"))
+                .willAnswer(invocation -> fileStore.store(invocation.getArgument(0), (Path) invocation.getArgument(1)));
+        ChunkedUploadService service = new ChunkedUploadService(failingOnce, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofHours(1),
+                Duration.ofMinutes(10), 100, DataSize.ofMegabytes(1));
+        ChunkedUpload upload = service.init("retry.bin", 2, 2L);
+        service.writeChunk(upload.getUploadId(), 0, new ByteArrayInputStream(new byte[]{1, 2}), 2);
+
+        try {
+            service.complete(upload.getUploadId());
+            fail("store should fail");
+        } catch (IOException expected) {
+        }
+        // chunk를 다시 보내지 않고 complete만 다시 한다.
+        assertTrue(Files.exists(upload.getPartFile()));
+        assertTrue(service.get(upload.getUploadId()).isComplete());
+        StoredFile storedFile = service.complete(upload.getUploadId());
+        assertArrayEquals(new byte[]{1, 2}, Files.readAllBytes(storedFile.getPath()));
+    }
+
+    @Test
+    public void limitsOpenUploadsAndReservedBytes() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        ChunkedUploadService service = new ChunkedUploadService(fileStore, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofHours(1),
+                Duration.ofMinutes(10), 2, DataSize.ofKilobytes(10));
+
+        ChunkedUpload first = service.init("first.bin", 8 * 1024, null);
+        try {
+            service.init("second.bin", 4 * 1024, null);
+            fail("reserved bytes over the limit");
+        } catch (UploadLimitExceededException expected) {
+        }
+        service.init("second.bin", 1024, null);
+        try {
+            service.init("third.bin", 1, null);
+            fail("too many open uploads");
+        } catch (UploadLimitExceededException expected) {
+        }
+
+        // 끝난 업로드의 몫은 돌려받는다.
+        service.abort(first.getUploadId());
+        assertEquals(1, service.getOpenUploads());
+        assertEquals(1024, service.getReservedBytes());
+        service.init("third.bin", 8 * 1024, null);
+    }
+
+    @Test
+    public void cleansUpStalePartsAndIdleUploads() throws Exception {
+        String uploadDir = temporaryFolder.newFolder("upload").getPath();
+        LocalFileStore fileStore = new LocalFileStore(uploadDir, DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+        // 재시작 전에 남은 part 파일은 이어받을 수 없으므로 기동할 때 지운다.
+        Path stalePart = Files.createDirectories(Paths.get(uploadDir, ".chunked")).resolve("stale.part");
+        Files.write(stalePart, new byte[1024]);
+        ChunkedUploadService service = new ChunkedUploadService(fileStore, uploadDir + "/.chunked",
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), Duration.ofMillis(50),
+                Duration.ofMillis(20), 100, DataSize.ofMegabytes(1));
+        try {
+            assertFalse(Files.exists(stalePart));
+
+            // init이 다시 불리지 않아도 방치된 업로드는 주기적으로 정리된다.
+            ChunkedUpload upload = service.init("idle.bin", 4, 2L);
+            long deadline = System.currentTimeMillis() + 5000;
+            // 업로드 수를 먼저 줄인 다음 part 파일을 지우므로 둘 다 기다린다.
+            while ((service.getOpenUploads() > 0 || Files.exists(upload.getPartFile()))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, service.getOpenUploads());
+            assertEquals(0, service.getReservedBytes());
+            assertFalse(Files.exists(upload.getPartFile()));
+        } finally {
+            service.destroy();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ContentAddressedFileStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File storeDir;
+
+    @Before
+    public void setUp() throws Exception {
+        storeDir = temporaryFolder.newFolder("store");
+    }
+
+    @Test
+    public void deduplicateSameContent() throws Exception {
+        ContentAddressedFileStore fileStore = newFileStore();
+        byte[] content = "same attachment".getBytes(StandardCharsets.UTF_8);
+
+        StoredFile first = fileStore.store("a.txt", new ByteArrayInputStream(content), -1);
+        StoredFile second = fileStore.store("b.txt", new ByteArrayInputStream(content), -1);
+
+        // 이름은 달라도 같은 blob을 가리킨다.
+        assertEquals(first.getPath(), second.getPath());
+        assertEquals(1, fileStore.getDeduplicatedCount());
+        assertEquals(1, countBlobs());
+        assertEquals("b.txt", fileStore.find("b.txt").get().getName());
+        assertFalse(fileStore.find("c.txt").isPresent());
+    }
+
+    @Test
+    public void reloadIndexOnRestart() throws Exception {
+        ContentAddressedFileStore fileStore = newFileStore();
+        fileStore.store("a.txt", new ByteArrayInputStream("version 1".getBytes(StandardCharsets.UTF_8)), -1);
+        StoredFile latest = fileStore.store("a.txt", new ByteArrayInputStream("version 2".getBytes(StandardCharsets.UTF_8)), -1);
+        fileStore.destroy();
+
+        // index 마지막에 쓰다 만 record가 남은 경우
+        try (FileChannel channel = FileChannel.open(storeDir.toPath().resolve("index"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 5, 'b'}));
+        }
+
+        ContentAddressedFileStore reloaded = newFileStore();
+        StoredFile found = reloaded.find("a.txt").get();
+        assertEquals(latest.getSha256(), found.getSha256());
+        assertEquals(latest.getSize(), found.getSize());
+        assertArrayEquals("version 2".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(found.getPath()));
+        assertFalse(reloaded.find("b").isPresent());
+        reloaded.destroy();
+    }
+
+    @Test
+    public void collectUnreferencedBlobs() throws Exception {
+        ContentAddressedFileStore fileStore = newFileStore();
+        byte[] shared = "shared".getBytes(StandardCharsets.UTF_8);
+        StoredFile first = fileStore.store("a.txt", new ByteArrayInputStream(shared), -1);
+        fileStore.store("b.txt", new ByteArrayInputStream(shared), -1);
+
+        // b.txt가 아직 가리키므로 a.txt를 덮어써도 남는다.
+        fileStore.store("a.txt", new ByteArrayInputStream("a only".getBytes(StandardCharsets.UTF_8)), -1);
+        assertTrue(Files.exists(first.getPath()));
+        assertEquals(2, countBlobs());
+
+        // 마지막 이름까지 덮어쓰면 지운다.
+        fileStore.store("b.txt", new ByteArrayInputStream("b only".getBytes(StandardCharsets.UTF_8)), -1);
+        assertFalse(Files.exists(first.getPath()));
+        assertEquals(2, countBlobs());
+        assertEquals(1, fileStore.getCollectedCount());
+        fileStore.destroy();
+
+        // index에 쓰기 전에 죽어서 남은 blob은 기동할 때 지운다.
+        Path orphan = storeDir.toPath().resolve("blobs/ff/ff" + first.getSha256().substring(2));
+        Files.createDirectories(orphan.getParent());
+        Files.write(orphan, shared);
+        ContentAddressedFileStore reloaded = newFileStore();
+        assertFalse(Files.exists(orphan));
+        assertEquals(2, countBlobs());
+        assertArrayEquals("b only".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(reloaded.find("b.txt").get().getPath()));
+        reloaded.destroy();
+    }
+
+    private ContentAddressedFileStore newFileStore() throws Exception {
+        return new ContentAddressedFileStore(storeDir.getPath(), DataSize.ofKilobytes(1), DataSize.ofMegabytes(1));
+    }
+
+    private long countBlobs() throws Exception {
+        try (Stream<Path> files = Files.walk(storeDir.toPath().resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 전체 controller에 섞어서 부하를 주고 route별 latency(HdrHistogram)와 처리량을 기록한다. (평소에는 건너뛴다.)
+ * - app을 random port로 띄우고, client thread마다 아래 시나리오를 비율대로 골라서 계속 보낸다. (seed 고정 --> 매번 같은 순서)
+ *   POST /api/events, GET /events/{id}, GET /file/{filename}, GET,POST /hello/multipath/**, /url_pattern/events/form 4단계
+ * - warmup 동안의 기록은 버리고 measure 동안만 기록한다.
+ * - 응답을 기다렸다가 다음 요청을 보내는 방식(closed loop)이라, 서버가 멈춘 동안 못 보낸 요청의 latency는 기록되지 않는다.
+ *   run끼리 비교하는 용도로 쓴다.
+ * - 결과는 target/loadtest/loadtest-[시간].json (route별 count, error, req/s, p50/p90/p99/p99.9/max ms)과
+ *   route별 .hgrm(HdrHistogram percentile 분포)으로 남긴다.
+ *
+ * ex) mvn -P loadtest test -Dloadtest.clients=64 -Dloadtest.measure=60s
+ */
+public class EndToEndLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 32);
+    private static final long WARMUP_MILLIS = seconds("loadtest.warmup", "5s");
+    private static final long MEASURE_MILLIS = seconds("loadtest.measure", "30s");
+    private static final int FILE_BYTES = 32 * 1024;
+    private static final String[] NAMES = {"study", "seminar", "hobby", "social"};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final List<Integer> eventIds = new CopyOnWriteArrayList<>();
+    private final LongAdder connectionErrors = new LongAdder();
+    private String baseUrl;
+
+    @Test
+    public void mixedTraffic() throws Exception {
+        assumeTrue("load test, run with -Dloadtest=true", Boolean.getBoolean("loadtest"));
+
+        String dir = temporaryFolder.newFolder().getPath();
+        ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(DemoWebMvcApplication.class)
+                .run("--server.port=0",
+                        "--logging.level.root=WARN",
+                        "--file.upload.dir=" + dir + "/upload",
+                        "--event.store.dir=" + dir + "/events");
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            baseUrl = "http://localhost:" + context.getWebServer().getPort();
+            prepare();
+
+            long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+            long measureEnd = warmupEnd + MEASURE_MILLIS;
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                Random random = new Random(i);
+                running.add(clients.submit(() -> drive(random, measureEnd)));
+            }
+            Thread.sleep(WARMUP_MILLIS);
+            // warmup 동안의 기록을 버린다.
+            routes.values().forEach(Route::reset);
+            connectionErrors.reset();
+            for (Future<?> client : running) {
+                client.get();
+            }
+            routes.values().forEach(Route::collect);
+
+            Path report = writeReport(MEASURE_MILLIS);
+            System.out.println("load test report : " + report.toAbsolutePath());
+            for (Route route : routes.values()) {
+                assertTrue(route.name + " has no successful requests", route.histogram.getTotalCount() > 0);
+            }
+        } finally {
+            clients.shutdownNow();
+            context.close();
+        }
+    }
+
+    // 조회할 event, file을 미리 만들어둔다.
+    private void prepare() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            Response created = send("POST", "/api/events", "application/json", eventJson(i), null);
+            eventIds.add(new ObjectMapper().readTree(created.body).get("id").asInt());
+        }
+        send("PUT", "/file/loadtest.bin", "application/octet-stream", new byte[FILE_BYTES], null);
+    }
+
+    private void drive(Random random, long end) {
+        while (System.currentTimeMillis() < end) {
+            int dice = random.nextInt(100);
+            try {
+                if (dice < 15) {
+                    timed("POST /api/events", "POST", "/api/events", "application/json", eventJson(random.nextInt()), null);
+                } else if (dice < 50) {
+                    int id = eventIds.get(random.nextInt(eventIds.size()));
+                    timed("GET /events/{id}", "GET", "/events/" + id, null, null, null);
+                } else if (dice < 65) {
+                    timed("GET /file/{filename}", "GET", "/file/loadtest.bin", null, null, null);
+                } else if (dice < 85) {
+                    // GET은 {name:[a-z]+} handler, /**는 POST로 보낸다.
+                    // (GET /hello/multipath/**는 helloRestDup, helloPost 둘 다 매핑되어 Ambiguous handler 500)
+                    if (random.nextBoolean()) {
+                        timed("GET /hello/multipath/{name}", "GET", "/hello/multipath/" + NAMES[random.nextInt(NAMES.length)], null, null, null);
+                    } else {
+                        timed("POST /hello/multipath/**", "POST", "/hello/multipath/" + random.nextInt(1000) + "/detail", null, null, null);
+                    }
+                } else {
+                    formFlow(random);
+                }
+            } catch (IOException ex) {
+                connectionErrors.increment();
+            }
+        }
+    }
+
+    // form/name --> form/limit, session cookie를 이어서 쓴다.
+    private void formFlow(Random random) throws IOException {
+        Response response = timed("GET /url_pattern/events/form/name", "GET", "/url_pattern/events/form/name", null, null, null);
+        String cookie = response.cookie;
+        form("POST /url_pattern/events/form/name", "/url_pattern/events/form/name",
+                "name=" + NAMES[random.nextInt(NAMES.length)] + "&startDate=2020-10-13", cookie);
+        timed("GET /url_pattern/events/form/limit", "GET", "/url_pattern/events/form/limit", null, null, cookie);
+        form("POST /url_pattern/events/form/limit", "/url_pattern/events/form/limit",
+                "limit=" + (1 + random.nextInt(100)), cookie);
+    }
+
+    private void form(String routeName, String path, String body, String cookie) throws IOException {
+        timed(routeName, "POST", path, "application/x-www-form-urlencoded", body.getBytes(StandardCharsets.UTF_8), cookie);
+    }
+
+    private Response timed(String routeName, String method, String path, String contentType, byte[] body, String cookie) throws IOException {
+        long started = System.nanoTime();
+        Response response = send(method, path, contentType, body, cookie);
+        long elapsed = System.nanoTime() - started;
+        Route route = route(routeName);
+        if (response.status >= 400) {
+            route.errors.increment();
+        } else {
+            route.recorder.recordValue(elapsed);
+        }
+        return response;
+    }
+
+    private Response send(String method, String path, String contentType, byte[] body, String cookie) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("Accept", "*/*");
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        String setCookie = connection.getHeaderField("Set-Cookie");
+        // keep-alive 연결을 다시 쓰려면 body를 끝까지 읽어야 한다.
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    received.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Response(status, received.toByteArray(), setCookie == null ? null : setCookie.split(";", 2)[0]);
+    }
+
+    private Route route(String name) {
+        return routes.computeIfAbsent(name, Route::new);
+    }
+
+    private Path writeReport(long measureMillis) throws IOException {
+        Path dir = Paths.get("target", "loadtest");
+        Files.createDirectories(dir);
+        String runId = "loadtest-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("run", runId);
+        report.put("clients", CLIENTS);
+        report.put("measureSeconds", measureMillis / 1000.0);
+        report.put("connectionErrors", connectionErrors.sum());
+        Map<String, Object> byRoute = new LinkedHashMap<>();
+        System.out.printf("%-36s %8s %6s %9s %9s %9s %9s %9s %9s%n",
+                "route", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        routes.values().stream().sorted((a, b) -> a.name.compareTo(b.name)).forEach(route -> {
+            Histogram histogram = route.histogram;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", histogram.getTotalCount());
+            stats.put("errors", route.errors.sum());
+            stats.put("throughput", histogram.getTotalCount() / (measureMillis / 1000.0));
+            stats.put("p50", millis(histogram.getValueAtPercentile(50)));
+            stats.put("p90", millis(histogram.getValueAtPercentile(90)));
+            stats.put("p99", millis(histogram.getValueAtPercentile(99)));
+            stats.put("p99.9", millis(histogram.getValueAtPercentile(99.9)));
+            stats.put("max", millis(histogram.getMaxValue()));
+            byRoute.put(route.name, stats);
+            System.out.printf("%-36s %8d %6d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", route.name,
+                    stats.get("count"), stats.get("errors"), stats.get("throughput"), stats.get("p50"),
+                    stats.get("p90"), stats.get("p99"), stats.get("p99.9"), stats.get("max"));
+            try (PrintStream out = new PrintStream(
+                    dir.resolve(runId + "-" + route.name.replaceAll("[^A-Za-z0-9]+", "_") + ".hgrm").toFile(), "UTF-8")) {
+                // 단위 : ms
+                histogram.outputPercentileDistribution(out, 1_000_000.0);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        report.put("routes", byRoute);
+
+        Path file = dir.resolve(runId + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        return file;
+    }
+
+    private static byte[] eventJson(int seed) {
+        return ("{\"name\":\"load " + (seed & 0xFFFF) + "\",\"limit\":" + (1 + (seed & 0xFF)) + ",\"startDate\":\"2020-10-13\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static long seconds(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue);
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(value.replaceAll("s$", "")));
+    }
+
+    private static class Route {
+        final String name;
+        // client thread들이 기록하는 동안 끊김없이 값을 꺼내기 위해 Recorder를 쓴다.
+        final Recorder recorder = new Recorder(3);
+        final LongAdder errors = new LongAdder();
+        Histogram histogram;
+
+        Route(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+            recorder.reset();
+            errors.reset();
+        }
+
+        void collect() {
+            histogram = recorder.getIntervalHistogram();
+        }
+    }
+
+    private static class Response {
+        final int status;
+        final byte[] body;
+        final String cookie;
+
+        Response(int status, byte[] body, String cookie) {
+            this.status = status;
+            this.body = body;
+            this.cookie = cookie;
+        }
+    }
+}
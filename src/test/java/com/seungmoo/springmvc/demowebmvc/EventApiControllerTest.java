@@ -1,15 +1,30 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -24,6 +39,9 @@ public class EventApiControllerTest {
     @Autowired
     MockMvc mockMvc;
 
+    @SpyBean
+    EventTaskExecutor eventTaskExecutor;
+
     @Test
     public void createEvent() throws Exception {
         Event event = new Event();
@@ -32,7 +50,7 @@ public class EventApiControllerTest {
 
         String json = objectMapper.writeValueAsString(event);
 
-        mockMvc.perform(post("/api/events")
+        performAsync(post("/api/events")
                             .contentType(MediaType.APPLICATION_JSON)
                             .content(json)
                             .accept(MediaType.APPLICATION_JSON))
@@ -41,4 +59,175 @@ public class EventApiControllerTest {
                         .andExpect(jsonPath("name").value("seungmoo"))
                         .andExpect(jsonPath("limit").value(20));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createEventsFromJsonArray() throws Exception {
+        String json = "[{\"name\":\"first\",\"limit\":10}, {\"name\":\"\",\"limit\":0}, {\"name\":\"third\",\"limit\":3}]";
+
+        mockMvc.perform(post("/api/events/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(json))
+                        .andDo(print())
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.length()").value(3))
+                        .andExpect(jsonPath("$[0].status").value("created"))
+                        .andExpect(jsonPath("$[0].event.name").value("first"))
+                        .andExpect(jsonPath("$[1].status").value("invalid"))
+                        .andExpect(jsonPath("$[1].errors.length()").value(2))
+                        .andExpect(jsonPath("$[2].index").value(2));
+    }
+
+    @Test
+    public void createEventsWithMismatchedType() throws Exception {
+        // type이 맞지 않는 item은 invalid로 두고 다음 item을 계속 처리한다.
+        String json = "[{\"name\":\"first\",\"limit\":\"abc\",\"tags\":[1,{\"a\":[2]}]}, \"text\", {\"name\":\"third\",\"limit\":3}]";
+
+        mockMvc.perform(post("/api/events/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(json))
+                        .andDo(print())
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.length()").value(3))
+                        .andExpect(jsonPath("$[0].status").value("invalid"))
+                        .andExpect(jsonPath("$[0].errors[0].field").value("limit"))
+                        .andExpect(jsonPath("$[1].status").value("invalid"))
+                        .andExpect(jsonPath("$[2].status").value("created"))
+                        .andExpect(jsonPath("$[2].event.name").value("third"));
+    }
+
+    @Test
+    public void createEventsWithNonObjectItems() throws Exception {
+        // null이나 배열 같이 object가 아닌 item도 invalid로 두고 계속 처리한다.
+        String json = "[null, {\"name\":\"second\",\"limit\":2}, [1, {\"name\":\"x\"}], {\"name\":\"fourth\",\"limit\":4}]";
+
+        mockMvc.perform(post("/api/events/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(json))
+                        .andDo(print())
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.length()").value(4))
+                        .andExpect(jsonPath("$[0].status").value("invalid"))
+                        .andExpect(jsonPath("$[1].status").value("created"))
+                        .andExpect(jsonPath("$[2].status").value("invalid"))
+                        .andExpect(jsonPath("$[3].status").value("created"))
+                        .andExpect(jsonPath("$[3].event.name").value("fourth"));
+
+        String response = mockMvc.perform(post("/api/events/batch")
+                                            .contentType(EventApiController.APPLICATION_NDJSON_VALUE)
+                                            .content("null\n{\"name\":\"second\",\"limit\":2}\n"))
+                                    .andExpect(status().isOk())
+                                    .andReturn().getResponse().getContentAsString();
+        String[] lines = response.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("invalid", objectMapper.readTree(lines[0]).get("status").asText());
+        assertEquals("created", objectMapper.readTree(lines[1]).get("status").asText());
+    }
+
+    @Test
+    public void createEventsFromNdjson() throws Exception {
+        String ndjson = "{\"name\":\"first\",\"limit\":10}\n{\"name\":\"second\",\"limit\":2}\n{\"name\":";
+
+        String response = mockMvc.perform(post("/api/events/batch")
+                                            .contentType(EventApiController.APPLICATION_NDJSON_VALUE)
+                                            .content(ndjson))
+                                    .andDo(print())
+                                    .andExpect(status().isOk())
+                                    .andExpect(content().contentType(EventApiController.APPLICATION_NDJSON_VALUE))
+                                    .andReturn().getResponse().getContentAsString();
+
+        // 한 줄에 결과 하나, 형식이 깨진 곳에서 멈춘다.
+        String[] lines = response.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("created", objectMapper.readTree(lines[1]).get("status").asText());
+        assertEquals("malformed", objectMapper.readTree(lines[2]).get("status").asText());
+    }
+
+    @Test
+    public void createEventsAcrossCommitWindows() throws Exception {
+        // commit을 기다리는 단위(event.store.commit.max-batch)보다 많은 건수 --> 순서대로 모두 결과가 나온다.
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            ndjson.append("{\"name\":\"batch-").append(i).append("\",\"limit\":").append(i % 2).append("}\n");
+        }
+
+        String response = mockMvc.perform(post("/api/events/batch")
+                                            .contentType(EventApiController.APPLICATION_NDJSON_VALUE)
+                                            .content(ndjson.toString()))
+                                    .andExpect(status().isOk())
+                                    .andReturn().getResponse().getContentAsString();
+
+        String[] lines = response.split("\n");
+        assertEquals(600, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode result = objectMapper.readTree(lines[i]);
+            assertEquals(i, result.get("index").asInt());
+            // limit 0은 검증 실패
+            assertEquals(i % 2 == 0 ? "invalid" : "created", result.get("status").asText());
+        }
+    }
+
+    @Test
+    public void ingestEvents() throws Exception {
+        String ndjson = "{\"name\":\"first\",\"limit\":10,\"startDate\":\"2020-10-13\",\"tags\":[\"a\",{\"b\":1}]}\n"
+                + "{\"name\":\"second\",\"limit\":\"many\"}\n"
+                + "{\"name\":\"\",\"limit\":1}\n"
+                + "{\"name\":\"fourth\",\"limit\":\"4\"}\n";
+
+        performAsync(post("/api/events/ingest")
+                            .contentType(EventApiController.APPLICATION_NDJSON_VALUE)
+                            .content(ndjson))
+                        .andDo(print())
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("received").value(4))
+                        .andExpect(jsonPath("accepted").value(2))
+                        .andExpect(jsonPath("rejected").value(2))
+                        .andExpect(jsonPath("malformed").value(false))
+                        .andExpect(jsonPath("errors[0]").value(startsWith("line 2 : limit")));
+    }
+
+    @Test
+    public void createdEventIsStored() throws Exception {
+        String response = performAsync(post("/api/events")
+                                            .contentType(MediaType.APPLICATION_JSON)
+                                            .content("{\"name\":\"stored\",\"limit\":5,\"startDate\":\"2020-10-13\"}"))
+                                    .andExpect(status().isOk())
+                                    .andExpect(jsonPath("id").exists())
+                                    .andReturn().getResponse().getContentAsString();
+        int id = objectMapper.readTree(response).get("id").asInt();
+
+        mockMvc.perform(get("/events/" + id))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("name").value("stored"))
+                        .andExpect(jsonPath("startDate").value("2020-10-13"));
+        mockMvc.perform(get("/url_pattern/events/" + id + ";name=stored"))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("limit").value(5));
+
+        mockMvc.perform(delete("/events/" + id))
+                        .andExpect(status().isNoContent());
+        mockMvc.perform(get("/events/" + id))
+                        .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void saturatedExecutor() throws Exception {
+        // thread pool이 가득 찬 경우
+        doThrow(new RejectedExecutionException("full")).when(eventTaskExecutor).supply(any());
+
+        mockMvc.perform(post("/api/events/ingest")
+                            .contentType(EventApiController.APPLICATION_NDJSON_VALUE)
+                            .content("{\"name\":\"first\",\"limit\":10}\n"))
+                        .andDo(print())
+                        .andExpect(status().isServiceUnavailable())
+                        .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    // handler가 CompletableFuture를 리턴하면 async로 처리된다.
+    // --> 결과가 나올 때까지 기다렸다가 다시 dispatch 해서 최종 응답을 확인한다.
+    private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                                    .andExpect(request().asyncStarted())
+                                    .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,128 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.web.bind.WebDataBinder;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청마다 거치는 Event 처리 비용 (JMH)
+ * - JSON 변환 (@RequestBody / @ResponseBody, EventApiController)
+ * - @Validated(Event.ValidateAll.class) bean validation
+ * - EventValidator.validate
+ * - request parameter --> Event binding (BaseController.initEventBinder 적용, @ModelAttribute)
+ * 실행 : mvn -P benchmark verify -Djmh.include=EventHotPathBenchmark
+ * 결과 단위는 ns/op, 숫자가 커지면 요청당 CPU 비용이 늘어난 것이다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EventHotPathBenchmark {
+
+    private ObjectWriter eventWriter;
+    private ObjectReader eventReader;
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private EventValidator eventValidator;
+    private BaseController baseController;
+    private DefaultFormattingConversionService conversionService;
+
+    private Event event;
+    private String json;
+    private MutablePropertyValues formParams;
+
+    @Setup
+    public void setUp() throws IOException {
+        // spring-boot의 ObjectMapper와 같은 설정 (날짜를 "yyyy-MM-dd" 문자열로)
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        eventWriter = objectMapper.writerFor(Event.class);
+        eventReader = objectMapper.readerFor(Event.class);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        eventValidator = new EventValidator();
+        baseController = new BaseController();
+        conversionService = new DefaultFormattingConversionService();
+
+        event = new Event();
+        event.setId(42);
+        event.setName("spring webmvc study");
+        event.setLimit(20);
+        event.setStartDate(LocalDate.of(2020, 10, 13));
+        json = eventWriter.writeValueAsString(event);
+
+        formParams = new MutablePropertyValues();
+        formParams.add("id", "42");
+        formParams.add("name", "spring webmvc study");
+        formParams.add("limit", "20");
+        formParams.add("startDate", "2020-10-13");
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public String serializeJson() throws IOException {
+        return eventWriter.writeValueAsString(event);
+    }
+
+    @Benchmark
+    public Event deserializeJson() throws IOException {
+        return eventReader.readValue(json);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Event>> beanValidation() {
+        return validator.validate(event, Event.ValidateAll.class);
+    }
+
+    @Benchmark
+    public Errors eventValidator() {
+        Errors errors = new BeanPropertyBindingResult(event, "event");
+        eventValidator.validate(event, errors);
+        return errors;
+    }
+
+    // handler 호출마다 binder를 새로 만들고 @InitBinder를 적용하는 것까지 포함
+    @Benchmark
+    public Event bindForm() {
+        Event target = new Event();
+        WebDataBinder binder = new WebDataBinder(target, "event");
+        binder.setConversionService(conversionService);
+        baseController.initEventBinder(binder);
+        binder.bind(formParams);
+        return target;
+    }
+}
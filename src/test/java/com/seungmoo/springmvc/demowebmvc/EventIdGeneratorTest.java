@@ -0,0 +1,97 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventIdGeneratorTest {
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        EventIdGenerator generator = new EventIdGenerator(5, 4, 16);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80_000, ids.size());
+        // 모든 id의 아래 4bit가 node 번호
+        assertTrue(ids.stream().allMatch(id -> id > 0 && (id & 0xF) == 5));
+    }
+
+    @Test
+    public void shortLivedThreadsDoNotDiscardBlocks() throws Exception {
+        // 요청마다 새 thread (virtual thread 등) --> thread가 바뀌어도 이미 가져온 block을 이어서 쓴다.
+        EventIdGenerator generator = new EventIdGenerator(0, 4, 64);
+        int threads = 5_000;
+        int[] ids = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> ids[index] = generator.nextId());
+            thread.start();
+            thread.join();
+        }
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        int maxSequence = 0;
+        for (int id : ids) {
+            maxSequence = Math.max(maxSequence, id >>> 4);
+        }
+        // stripe마다 쓰다 만 block 하나 이상은 버려지지 않는다.
+        assertTrue("max sequence " + maxSequence, maxSequence <= threads + stripes * 64);
+    }
+
+    @Test
+    public void continuesAfterReplayedId() {
+        EventIdGenerator generator = new EventIdGenerator(1, 4, 64);
+        generator.advancePast((1000 << 4) | 3); // 다른 node가 쓴 id여도 sequence 기준으로 넘어간다.
+        assertEquals((1001 << 4) | 1, generator.nextId());
+        assertEquals((1002 << 4) | 1, generator.nextId());
+    }
+
+    @Test
+    public void lastBlockIsUsableAndExhaustionIsStable() {
+        // node-bits 0 이면 마지막 block이 Integer.MAX_VALUE에서 끝난다.
+        EventIdGenerator generator = new EventIdGenerator(0, 0, 64);
+        generator.advancePast(Integer.MAX_VALUE - 64);
+        for (int i = 63; i >= 0; i--) {
+            assertEquals(Integer.MAX_VALUE - i, generator.nextId());
+        }
+        // 몇 번을 다시 시도해도 counter가 넘쳐서 음수 id를 주는 일 없이 계속 실패한다.
+        for (int i = 0; i < 3; i++) {
+            try {
+                generator.nextId();
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void exhausted() {
+        EventIdGenerator generator = new EventIdGenerator(0, 16, 64);
+        generator.advancePast(Integer.MAX_VALUE - 1);
+        generator.nextId();
+    }
+}
@@ -0,0 +1,208 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EventRepositoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void indexesAndReplay() throws Exception {
+        String dir = temporaryFolder.newFolder("events").getPath();
+        // segment를 작게 잡아서 log를 다시 map 하는 경우도 지나가게 한다.
+        EventRepository repository = open(dir, DataSize.ofBytes(256));
+
+        Event first = repository.create(event("spring", 10, LocalDate.of(2020, 10, 1)));
+        Event second = repository.create(event("spring", 20, LocalDate.of(2020, 10, 20)));
+        Event third = repository.create(event("boot", null, null));
+        for (int i = 0; i < 20; i++) {
+            repository.create(event("filler", i + 1, LocalDate.of(2021, 1, 1)));
+        }
+        assertTrue(repository.delete(second.getId()));
+        assertFalse(repository.delete(second.getId()));
+
+        assertEquals("spring", repository.findById(first.getId()).get().getName());
+        assertFalse(repository.findById(second.getId()).isPresent());
+        assertEquals(1, repository.findByName("spring").size());
+        assertEquals(ids(first), ids(repository.findByStartDateBetween(LocalDate.of(2020, 10, 1), LocalDate.of(2020, 10, 31), null, 10).getEvents()));
+        repository.destroy();
+
+        // 다시 열면 log를 replay 해서 같은 상태가 된다.
+        EventRepository reopened = open(dir, DataSize.ofBytes(256));
+        assertEquals(22, reopened.count());
+        assertNull(reopened.findById(third.getId()).get().getLimit());
+        assertFalse(reopened.findById(second.getId()).isPresent());
+        assertEquals(1, reopened.findByName("spring").size());
+        // id는 이어서 붙는다.
+        assertTrue(reopened.create(event("next", 1, null)).getId() > third.getId() + 20);
+        reopened.destroy();
+    }
+
+    @Test
+    public void cursorPagination() throws Exception {
+        EventRepository repository = open(temporaryFolder.newFolder("events").getPath(), DataSize.ofKilobytes(4));
+        Event late = repository.create(event("spring-boot", 1, LocalDate.of(2020, 10, 3)));
+        Event early = repository.create(event("spring-mvc", 2, LocalDate.of(2020, 10, 1)));
+        Event sameDay = repository.create(event("spring", 3, LocalDate.of(2020, 10, 1)));
+        Event other = repository.create(event("summer", 4, LocalDate.of(2020, 10, 2)));
+        repository.create(event("outside", 5, LocalDate.of(2020, 11, 1)));
+
+        // startDate 순서, 같은 날이면 id 순서
+        EventPage page = repository.findByStartDateBetween(LocalDate.of(2020, 10, 1), LocalDate.of(2020, 10, 31), null, 2);
+        assertEquals(ids(early, sameDay), ids(page.getEvents()));
+        assertNotNull(page.getNextCursor());
+        page = repository.findByStartDateBetween(LocalDate.of(2020, 10, 1), LocalDate.of(2020, 10, 31), page.getNextCursor(), 2);
+        assertEquals(ids(other, late), ids(page.getEvents()));
+        assertNull(page.getNextCursor());
+
+        // 이름 순서, prefix가 다른 이름이 나오면 멈춘다.
+        page = repository.findByNamePrefix("spring", null, 2);
+        assertEquals(ids(sameDay, late), ids(page.getEvents()));
+        // 다음 페이지를 읽기 전에 지워진 Event는 건너뛴다.
+        repository.delete(early.getId());
+        page = repository.findByNamePrefix("spring", page.getNextCursor(), 2);
+        assertTrue(page.getEvents().isEmpty());
+        assertNull(page.getNextCursor());
+
+        try {
+            repository.findByNamePrefix("spring", "not-a-cursor", 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            repository.findByNamePrefix("spring", null, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        repository.destroy();
+    }
+
+    @Test
+    public void discardTornRecord() throws Exception {
+        String dir = temporaryFolder.newFolder("events").getPath();
+        EventRepository repository = open(dir, DataSize.ofKilobytes(4));
+        repository.create(event("ok", 1, null));
+        Event torn = repository.create(event("torn", 2, null));
+        repository.destroy();
+
+        // 마지막 record의 payload 중간을 망가뜨린다. (쓰다가 죽은 경우)
+        // 첫번째 record = header 8byte + payload 21byte
+        Path log = temporaryFolder.getRoot().toPath().resolve("events/events.log");
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(29 + 8 + 8);
+            file.write(0x7f);
+        }
+
+        EventRepository reopened = open(dir, DataSize.ofKilobytes(4));
+        assertEquals(1, reopened.count());
+        assertFalse(reopened.findById(torn.getId()).isPresent());
+        // 망가진 자리부터 다시 쓰고, 다시 열어도 읽힌다.
+        Event next = reopened.create(event("next", 3, null));
+        reopened.destroy();
+        assertTrue(open(dir, DataSize.ofKilobytes(4)).findById(next.getId()).isPresent());
+    }
+
+    @Test
+    public void compactWhenDeadRecordsPileUp() throws Exception {
+        String dir = temporaryFolder.newFolder("events").getPath();
+        EventRepository repository = new EventRepository(new EventIdGenerator(0, 4, 64), dir, DataSize.ofKilobytes(4),
+                1024, 64, Duration.ZERO, true, 100, 0.5);
+        Event kept = repository.create(event("kept", 1, null));
+        Event last = null;
+        for (int i = 0; i < 300; i++) {
+            last = repository.create(event("temp", i, null));
+            repository.delete(last.getId());
+        }
+        repository.destroy();
+
+        // 기동할 때가 아니라 쓰는 도중에 compact 되어서 record가 거의 다 빠진다.
+        Path log = temporaryFolder.getRoot().toPath().resolve("events/events.log");
+        assertTrue(Files.size(log) < 300 * 29 / 2);
+        EventRepository reopened = open(dir, DataSize.ofKilobytes(4));
+        assertEquals(1, reopened.count());
+        assertEquals("kept", reopened.findById(kept.getId()).get().getName());
+        // 지워진 가장 큰 id도 다시 발급하지 않는다.
+        assertTrue(reopened.create(event("next", 1, null)).getId() > last.getId());
+        reopened.destroy();
+    }
+
+    @Test
+    public void rollbackWhenCommitFails() throws Exception {
+        String dir = temporaryFolder.newFolder("events").getPath();
+        AtomicBoolean failSync = new AtomicBoolean();
+        EventRepository repository = new EventRepository(new EventIdGenerator(0, 4, 64), dir,
+                DataSize.ofKilobytes(4), 1024, 64, Duration.ZERO, true, 1024, 0.5) {
+            @Override
+            void sync() {
+                if (failSync.getAndSet(false)) {
+                    throw new IllegalStateException("disk failure");
+                }
+                super.sync();
+            }
+        };
+        Event kept = repository.create(event("kept", 1, null));
+
+        failSync.set(true);
+        try {
+            repository.delete(kept.getId());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // 실패한 delete는 메모리에도 남지 않는다.
+        assertTrue(repository.findById(kept.getId()).isPresent());
+        assertEquals(1, repository.findByName("kept").size());
+
+        failSync.set(true);
+        try {
+            repository.create(event("lost", 2, null));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(repository.findByName("lost").isEmpty());
+        assertEquals(1, repository.count());
+        repository.destroy();
+
+        // 로그에서도 되돌려져서 다시 열어도 같다.
+        EventRepository reopened = open(dir, DataSize.ofKilobytes(4));
+        assertTrue(reopened.findById(kept.getId()).isPresent());
+        assertEquals(1, reopened.count());
+        reopened.destroy();
+    }
+
+    private static EventRepository open(String dir, DataSize segmentSize) throws IOException {
+        return new EventRepository(new EventIdGenerator(0, 4, 64), dir, segmentSize, 1024, 64, Duration.ZERO, true, 1024, 0.5);
+    }
+
+    private static Event event(String name, Integer limit, LocalDate startDate) {
+        Event event = new Event();
+        event.setName(name);
+        event.setLimit(limit);
+        event.setStartDate(startDate);
+        return event;
+    }
+
+    private static List<Integer> ids(Event... events) {
+        return Arrays.stream(events).map(Event::getId).collect(Collectors.toList());
+    }
+
+    private static List<Integer> ids(List<Event> events) {
+        return events.stream().map(Event::getId).collect(Collectors.toList());
+    }
+}
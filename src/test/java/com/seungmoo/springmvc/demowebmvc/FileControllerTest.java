@@ -1,17 +1,35 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import com.jayway.jsonpath.JsonPath;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.StreamUtils;
+
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -33,4 +51,154 @@ public class FileControllerTest {
                     .andDo(print())
                     .andExpect(status().is3xxRedirection());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fileStreamUploadTest() throws Exception {
+        // multipart가 아닌 request body 그대로 업로드
+        this.mockMvc.perform(put("/file/stream.txt").content("hello stream"))
+                    .andDo(print())
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("name").value("stream.txt"))
+                    .andExpect(jsonPath("size").value(12))
+                    .andExpect(jsonPath("sha256").exists())
+                    .andExpect(jsonPath("path").doesNotExist());
+
+        // 업로드한 파일을 다시 내려받을 수 있다.
+        this.mockMvc.perform(get("/file/stream.txt"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/plain"))
+                    .andExpect(content().string("hello stream"));
+    }
+
+    @Autowired
+    private FileStore fileStore;
+
+    @Test
+    public void fileRemovedAfterLookupTest() throws Exception {
+        this.mockMvc.perform(put("/file/removed.txt").content("soon removed"))
+                    .andExpect(status().isCreated());
+
+        // 이름을 찾은 다음 내용(blob)이 지워진 경우 (다시 올라온 이름의 예전 blob 정리 등) --> 500이 아니라 404
+        Files.delete(fileStore.find("removed.txt").get().getPath());
+
+        this.mockMvc.perform(get("/file/removed.txt"))
+                    .andExpect(status().isNotFound());
+    }
+
+    private static final String SAMPLE_FILE = "alexander-popov-UUJzCuHUfYI-unsplash.jpg";
+
+    @Test
+    public void fileDownloadTest() throws Exception {
+        byte[] expected = StreamUtils.copyToByteArray(new ClassPathResource(SAMPLE_FILE).getInputStream());
+
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                    .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, expected.length))
+                    .andExpect(content().bytes(expected));
+    }
+
+    @Test
+    public void fileDownloadRangeTest() throws Exception {
+        byte[] expected = StreamUtils.copyToByteArray(new ClassPathResource(SAMPLE_FILE).getInputStream());
+
+        // 단일 Range --> 206, 해당 구간만 내려준다.
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.RANGE, "bytes=10-19"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/" + expected.length))
+                    .andExpect(content().bytes(Arrays.copyOfRange(expected, 10, 20)));
+
+        // 여러 Range --> multipart/byteranges
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.RANGE, "bytes=0-9,-10"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges; boundary=")));
+
+        // 파일 범위를 벗어나는 Range --> 416
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.RANGE, "bytes=" + expected.length + "-"))
+                    .andExpect(status().isRequestedRangeNotSatisfiable())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + expected.length));
+
+        // If-Range가 맞지 않으면 Range를 무시하고 전체 파일
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE)
+                                .header(HttpHeaders.RANGE, "bytes=10-19")
+                                .header(HttpHeaders.IF_RANGE, "\"other-version\""))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(expected));
+    }
+
+    @Test
+    public void fileHeadTest() throws Exception {
+        long length = new ClassPathResource(SAMPLE_FILE).contentLength();
+
+        this.mockMvc.perform(head("/file/" + SAMPLE_FILE))
+                    .andExpect(status().isOk())
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, length))
+                    .andExpect(content().bytes(new byte[0]));
+
+        this.mockMvc.perform(get("/file/no-such-file.txt"))
+                    .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void fileStatsTest() throws Exception {
+        // 작은 파일은 두번째 요청부터 HotFileCache(메모리)에서 나간다.
+        this.mockMvc.perform(put("/file/hot.txt").content("hello hot file")).andExpect(status().isCreated());
+        for (int i = 0; i < 2; i++) {
+            this.mockMvc.perform(get("/file/hot.txt"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().string("hello hot file"));
+        }
+
+        this.mockMvc.perform(get("/file-stats"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("hotFileCache.entries").value(greaterThan(0)))
+                    .andExpect(jsonPath("hotFileCache.hits").value(greaterThan(0)));
+    }
+
+    @Test
+    public void fileConditionalGetTest() throws Exception {
+        MockHttpServletResponse response = this.mockMvc.perform(get("/file/" + SAMPLE_FILE))
+                                                       .andExpect(status().isOk())
+                                                       .andExpect(header().exists(HttpHeaders.ETAG))
+                                                       .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                                                       .andReturn().getResponse();
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        String lastModified = response.getHeader(HttpHeaders.LAST_MODIFIED);
+
+        // 브라우저 cache가 갖고 있는 버전과 같으면 body 없이 304
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(HttpHeaders.ETAG, etag))
+                    .andExpect(content().bytes(new byte[0]));
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                    .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE).header(HttpHeaders.IF_NONE_MATCH, "\"other-version\""))
+                    .andExpect(status().isOk());
+
+        // If-Range의 ETag가 같으면 Range 요청을 그대로 처리한다. (이어받기)
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE)
+                                .header(HttpHeaders.RANGE, "bytes=0-9")
+                                .header(HttpHeaders.IF_RANGE, etag))
+                    .andExpect(status().isPartialContent());
+
+        // If-Range의 날짜는 Last-Modified와 정확히 같을 때만 Range를 처리한다.
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE)
+                                .header(HttpHeaders.RANGE, "bytes=0-9")
+                                .header(HttpHeaders.IF_RANGE, lastModified))
+                    .andExpect(status().isPartialContent());
+        String later = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME).plusHours(1));
+        this.mockMvc.perform(get("/file/" + SAMPLE_FILE)
+                                .header(HttpHeaders.RANGE, "bytes=0-9")
+                                .header(HttpHeaders.IF_RANGE, later))
+                    .andExpect(status().isOk());
+
+        // 업로드된 파일은 내용 hash가 ETag가 된다.
+        String sha256 = JsonPath.read(this.mockMvc.perform(put("/file/etag.txt").content("hello etag"))
+                                                  .andReturn().getResponse().getContentAsString(), "$.sha256");
+        this.mockMvc.perform(get("/file/etag.txt"))
+                    .andExpect(header().string(HttpHeaders.ETAG, "\"" + sha256 + "\""));
+    }
+}
@@ -0,0 +1,67 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class FileSenderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final FileSender fileSender = new FileSender(new CompressionSupport());
+
+    @Test
+    public void sendPrecompressedSibling() throws Exception {
+        Path path = temporaryFolder.newFile("app.js").toPath();
+        Files.write(path, "console.log('hello');".getBytes(StandardCharsets.UTF_8));
+        Files.write(path.resolveSibling("app.js.gz"), new byte[]{1, 2, 3});
+        Files.write(path.resolveSibling("app.js.br"), new byte[]{4, 5});
+
+        // br을 받지 않는 client --> .gz
+        MockHttpServletResponse gzip = send(path, "application/javascript", "gzip, br;q=0");
+        assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", gzip.getHeader("Vary"));
+        assertArrayEquals(new byte[]{1, 2, 3}, gzip.getContentAsByteArray());
+        assertTrue(gzip.getHeader("ETag").endsWith("-gzip\""));
+
+        MockHttpServletResponse br = send(path, "application/javascript", "gzip, deflate, br");
+        assertEquals("br", br.getHeader("Content-Encoding"));
+        assertArrayEquals(new byte[]{4, 5}, br.getContentAsByteArray());
+
+        MockHttpServletResponse identity = send(path, "application/javascript", null);
+        assertNull(identity.getHeader("Content-Encoding"));
+        assertEquals("console.log('hello');", identity.getContentAsString());
+        assertNotEquals(gzip.getHeader("ETag"), identity.getHeader("ETag"));
+    }
+
+    @Test
+    public void ignoreSiblingOfCompressedType() throws Exception {
+        Path path = temporaryFolder.newFile("photo.jpg").toPath();
+        Files.write(path, new byte[]{9, 9});
+        Files.write(path.resolveSibling("photo.jpg.gz"), new byte[]{1});
+
+        MockHttpServletResponse response = send(path, "image/jpeg", "gzip");
+        assertNull(response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Vary"));
+        assertArrayEquals(new byte[]{9, 9}, response.getContentAsByteArray());
+    }
+
+    private MockHttpServletResponse send(Path path, String mediaType, String acceptEncoding) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file/" + path.getFileName());
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        fileSender.send(path, mediaType, path.getFileName().toString(), null, request, response);
+        return response;
+    }
+}
@@ -0,0 +1,52 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class FlushingIterableTest {
+
+    @Test
+    public void flushesBeforeFirstAndEveryNthItem() {
+        CountingResponse response = new CountingResponse();
+        Iterator<Integer> iterator = new FlushingIterable<>(Arrays.asList(1, 2, 3, 4, 5), response, 2).iterator();
+
+        assertEquals(Integer.valueOf(1), iterator.next());
+        assertEquals(1, response.flushes);
+        assertTrue(response.isCommitted());
+        iterator.next();
+        assertEquals(1, response.flushes);
+        iterator.next();
+        iterator.next();
+        iterator.next();
+        assertEquals(3, response.flushes);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void flushFailure() throws IOException {
+        // client가 연결을 끊은 경우
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        doThrow(new IOException("Broken pipe")).when(response).flushBuffer();
+        new FlushingIterable<>(Arrays.asList(1), response, 10).iterator().next();
+    }
+
+    private static class CountingResponse extends MockHttpServletResponse {
+        int flushes;
+
+        @Override
+        public void flushBuffer() {
+            flushes++;
+            super.flushBuffer();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitWriterTest {
+
+    @Test
+    public void commitsQueuedWritesTogether() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        CountDownLatch firstCommit = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommitWriter<Integer, Integer> writer = new GroupCommitWriter<>("test-writer", 100, 10, Duration.ZERO,
+                item -> item * 2,
+                () -> {
+                    // 첫번째 commit이 fsync 하는 동안 나머지가 queue에 쌓인다.
+                    if (commits.incrementAndGet() == 1) {
+                        firstCommit.countDown();
+                        await(release);
+                    }
+                });
+
+        CompletableFuture<Integer> first = writer.submit(0);
+        firstCommit.await();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            futures.add(writer.submit(i));
+        }
+        assertFalse(first.isDone());
+        release.countDown();
+
+        assertEquals(Integer.valueOf(50), futures.get(24).join());
+        assertEquals(Integer.valueOf(0), first.join());
+        // 1 + 25건을 maxBatch(10)씩 --> 1 + 3번
+        assertEquals(4, commits.get());
+        writer.close();
+    }
+
+    @Test
+    public void failedWriteDoesNotFailBatch() throws Exception {
+        GroupCommitWriter<String, Integer> writer = new GroupCommitWriter<>("test-writer", 10, 10, Duration.ofMillis(20),
+                Integer::valueOf, () -> { });
+        CompletableFuture<Integer> bad = writer.submit("x");
+        CompletableFuture<Integer> good = writer.submit("1");
+        writer.close();
+
+        assertEquals(Integer.valueOf(1), good.join());
+        try {
+            bad.join();
+            fail();
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof NumberFormatException);
+        }
+        // 닫은 다음에는 받지 않는다.
+        assertTrue(writer.submit("2").isCompletedExceptionally());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class GzipCompressionFilterTest {
+
+    private final GzipCompressionFilter filter = new GzipCompressionFilter(new CompressionSupport());
+
+    @Test
+    public void compressLargeJson() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            json.append(i > 0 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"event\"}");
+        }
+        String body = json.append("]").toString();
+
+        MockHttpServletResponse response = perform("gzip, deflate", "application/json", body.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        byte[] compressed = response.getContentAsByteArray();
+        assertTrue(compressed.length < body.length());
+        byte[] decompressed = StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        assertEquals(body, new String(decompressed, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void skipSmallResponse() throws Exception {
+        MockHttpServletResponse response = perform("gzip", "application/json", "{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("{\"id\":1}", response.getContentAsString());
+        assertEquals(8, response.getContentLength());
+    }
+
+    @Test
+    public void skipAlreadyCompressedType() throws Exception {
+        byte[] jpeg = new byte[8192];
+        MockHttpServletResponse response = perform("gzip", "image/jpeg", jpeg);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(jpeg, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void skipWhenClientDoesNotAcceptGzip() throws Exception {
+        byte[] text = new byte[8192];
+        MockHttpServletResponse response = perform("gzip;q=0, br", "text/plain", text);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(text, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void explicitEncodingOverridesWildcard() throws Exception {
+        assertFalse(CompressionSupport.acceptsEncoding("*, gzip;q=0", "gzip"));
+        assertFalse(CompressionSupport.acceptsEncoding("gzip;q=0, *;q=1", "gzip"));
+        assertTrue(CompressionSupport.acceptsEncoding("br;q=0, *", "gzip"));
+        assertTrue(CompressionSupport.acceptsEncoding("gzip;q=0.5, *;q=0", "gzip"));
+
+        MockHttpServletResponse response = perform("*, gzip;q=0", "text/plain", new byte[8192]);
+        assertNull(response.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void mimeTypesAreReparsedWhenChanged() {
+        CompressionSupport compressionSupport = new CompressionSupport();
+        assertTrue(compressionSupport.isCompressible("application/json;charset=UTF-8"));
+
+        compressionSupport.setMimeTypes(Arrays.asList("image/svg+xml"));
+        assertTrue(compressionSupport.isCompressible("image/svg+xml"));
+        assertFalse(compressionSupport.isCompressible("application/json"));
+    }
+
+    @Test
+    public void skipResponseWithValidators() throws Exception {
+        // 파일 다운로드 (FileSender) : ETag, byte range는 압축하지 않은 내용 기준
+        byte[] text = new byte[8192];
+        MockHttpServletResponse response = perform("gzip", "text/plain", text, res -> {
+            res.setHeader("ETag", "\"abc\"");
+            res.setHeader("Accept-Ranges", "bytes");
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("\"abc\"", response.getHeader("ETag"));
+        assertArrayEquals(text, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void keepExistingVary() throws Exception {
+        byte[] text = new byte[8192];
+        MockHttpServletResponse response = perform("gzip", "text/plain", text,
+                res -> res.addHeader("Vary", "Origin, Accept-Encoding"));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(1, response.getHeaders("Vary").size());
+    }
+
+    private MockHttpServletResponse perform(String acceptEncoding, String contentType, byte[] body) throws Exception {
+        return perform(acceptEncoding, contentType, body, res -> { });
+    }
+
+    private MockHttpServletResponse perform(String acceptEncoding, String contentType, byte[] body,
+                                            Consumer<HttpServletResponse> headers) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/events");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res) throws IOException {
+                res.setContentType(contentType);
+                headers.accept(res);
+                // 여러번 나눠서 쓰고 flush 해도 결과는 같아야 한다.
+                res.getOutputStream().write(body, 0, body.length / 2);
+                res.getOutputStream().flush();
+                res.getOutputStream().write(body, body.length / 2, body.length - body.length / 2);
+                res.getOutputStream().flush();
+            }
+        }));
+        return response;
+    }
+}
@@ -0,0 +1,104 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "handler.metrics.allocation-sample-rate=1")
+@AutoConfigureMockMvc
+public class HandlerMetricsInterceptorTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void recordsHandlerMethod() throws Exception {
+        mockMvc.perform(get("/hello/multipath/seungmoo"))
+                .andExpect(status().isOk());
+
+        Timer timer = meterRegistry.get("handler.requests")
+                .tag("handler", "SampleController.helloRest")
+                .tag("status", "2xx")
+                .timer();
+        assertTrue(timer.count() >= 1);
+        assertTrue(meterRegistry.get("handler.allocated.bytes")
+                .tag("handler", "SampleController.helloRest")
+                .summary().totalAmount() > 0);
+        assertEquals(0, meterRegistry.get("handler.active")
+                .tag("handler", "SampleController.helloRest")
+                .gauge().value(), 0);
+    }
+
+    @Test
+    public void recordsWrittenResponseSize() throws Exception {
+        // Content-Length가 없는 응답도 실제로 쓴 byte 수를 기록한다. (OutputStream, view의 Writer)
+        assertResponseSize("SampleController.helloRest", get("/hello/multipath/seungmoo"));
+        assertResponseSize("URLPatternController.getEventsRedirect", get("/url_pattern/events/list")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "ko")
+                .flashAttr("newEvent", eventNamed("한글 이름")));
+    }
+
+    private void assertResponseSize(String handler, MockHttpServletRequestBuilder request) throws Exception {
+        DistributionSummary summary = meterRegistry.find("handler.response.size").tag("handler", handler).summary();
+        double before = summary == null ? 0 : summary.totalAmount();
+        byte[] body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertTrue(body.length > 0);
+        assertEquals(body.length, meterRegistry.get("handler.response.size").tag("handler", handler)
+                .summary().totalAmount() - before, 0);
+    }
+
+    private static Event eventNamed(String name) {
+        Event event = new Event();
+        event.setName(name);
+        return event;
+    }
+
+    @Test
+    public void asyncRequestIsRecordedOnce() throws Exception {
+        // 검증 실패(400)도 CompletableFuture로 돌려주므로 async로 처리된다.
+        long before = count("EventApiController.createEvent", "4xx");
+        MvcResult result = mockMvc.perform(post("/api/events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"\",\"limit\":0}"))
+                .andReturn();
+        // async 처리 중에는 처리 중인 요청으로 남는다.
+        assertEquals(1, meterRegistry.get("handler.active")
+                .tag("handler", "EventApiController.createEvent")
+                .gauge().value(), 0);
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(before + 1, count("EventApiController.createEvent", "4xx"));
+        assertTrue(meterRegistry.get("handler.errors")
+                .tag("handler", "EventApiController.createEvent")
+                .counter().count() >= 1);
+    }
+
+    private long count(String handler, String status) {
+        Timer timer = meterRegistry.find("handler.requests").tag("handler", handler).tag("status", status).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,97 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class HotFileCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void serveFromMemoryUntilModified() throws Exception {
+        // revalidate-interval = 0 --> 매번 mtime을 확인한다.
+        HotFileCache cache = new HotFileCache(new CompressionSupport(), DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), Duration.ZERO);
+        Path path = temporaryFolder.newFile("hello.txt").toPath();
+        Files.write(path, "hello".getBytes());
+
+        assertNull(cache.get("hello.txt", null));
+        assertNotNull(cache.load("hello.txt", path, null, "text/plain", null));
+        HotFileCache.CachedFile cached = cache.get("hello.txt", null);
+        assertNotNull(cached);
+        assertEquals(5, cache.getBytes());
+
+        // 같은 buffer를 여러번 보내도 내용이 그대로여야 한다.
+        FileSender fileSender = new FileSender(new CompressionSupport());
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            fileSender.send(cached, new MockHttpServletRequest("GET", "/file/hello.txt"), response);
+            assertEquals("hello", response.getContentAsString());
+        }
+
+        Files.write(path, "hello world".getBytes());
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertNull(cache.get("hello.txt", null));
+        assertEquals(0, cache.getBytes());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        HotFileCache cache = new HotFileCache(new CompressionSupport(), DataSize.ofKilobytes(1), DataSize.ofBytes(2000), Duration.ofHours(1));
+        for (String name : new String[]{"a.bin", "b.bin", "c.bin"}) {
+            Path path = temporaryFolder.newFile(name).toPath();
+            Files.write(path, new byte[800]);
+            cache.load(name, path, null, "application/octet-stream", null);
+            cache.get("a.bin", null);
+        }
+
+        // a는 계속 사용했으므로 남고, b가 밀려난다.
+        assertNotNull(cache.get("a.bin", null));
+        assertNull(cache.get("b.bin", null));
+        assertNotNull(cache.get("c.bin", null));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1600, cache.getBytes());
+
+        // 너무 큰 파일은 올리지 않는다.
+        Path big = temporaryFolder.newFile("big.bin").toPath();
+        Files.write(big, new byte[2048]);
+        assertNull(cache.load("big.bin", big, null, "application/octet-stream", null));
+    }
+
+    @Test
+    public void rememberTooLargeFiles() throws Exception {
+        HotFileCache cache = new HotFileCache(new CompressionSupport(), DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), Duration.ZERO);
+        Path big = temporaryFolder.newFile("big.txt").toPath();
+        Files.write(big, new byte[2048]);
+
+        assertNull(cache.get("big.txt", null));
+        assertNull(cache.load("big.txt", big, null, "text/plain", null));
+        // 너무 큰 파일로 기억하고 나면 miss로 세지 않는다.
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.get("big.txt", null));
+            assertNull(cache.load("big.txt", big, null, "text/plain", null));
+        }
+        assertEquals(1, cache.getMissCount());
+
+        // 작아지면 다시 올린다.
+        Files.write(big, "small".getBytes());
+        Files.setLastModifiedTime(big, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertNull(cache.get("big.txt", null));
+        assertEquals(2, cache.getMissCount());
+        assertNotNull(cache.load("big.txt", big, null, "text/plain", null));
+        assertNotNull(cache.get("big.txt", null));
+    }
+}
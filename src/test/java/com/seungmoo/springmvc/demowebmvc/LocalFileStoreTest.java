@@ -0,0 +1,95 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+public class LocalFileStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File uploadDir;
+
+    private LocalFileStore fileStore;
+
+    @Before
+    public void setUp() throws Exception {
+        uploadDir = temporaryFolder.newFolder("upload");
+        // chunk보다 큰 파일이 여러 번에 나눠서 써지는지 보기 위해 chunk-size를 작게 준다.
+        fileStore = new LocalFileStore(uploadDir.getPath(), DataSize.ofBytes(4), DataSize.ofBytes(32));
+    }
+
+    @Test
+    public void storeWithChecksum() throws Exception {
+        byte[] content = "hello upload store".getBytes(StandardCharsets.UTF_8);
+
+        StoredFile storedFile = fileStore.store("C:\\Users\\seungmoo\\hello.txt", new ByteArrayInputStream(content), -1);
+
+        assertEquals("hello.txt", storedFile.getName());
+        assertEquals(content.length, storedFile.getSize());
+        assertEquals(AbstractFileStore.toHex(MessageDigest.getInstance("SHA-256").digest(content)), storedFile.getSha256());
+        assertArrayEquals(content, Files.readAllBytes(storedFile.getPath()));
+    }
+
+    @Test
+    public void rejectDeclaredLengthOverLimit() throws Exception {
+        try {
+            fileStore.store("big.bin", new ByteArrayInputStream(new byte[0]), 33);
+            fail();
+        } catch (MaxUploadSizeExceededException expected) {
+            assertEquals(32, expected.getMaxUploadSize());
+        }
+    }
+
+    @Test
+    public void abortWhenStreamExceedsLimit() throws Exception {
+        try {
+            // Content-Length 없이 들어오는 경우
+            fileStore.store("big.bin", new ByteArrayInputStream(new byte[64]), -1);
+            fail();
+        } catch (MaxUploadSizeExceededException expected) {
+            // 임시 파일도 남지 않아야 한다.
+            assertArrayEquals(new String[]{".tmp"}, uploadDir.list());
+            assertArrayEquals(new String[0], new File(uploadDir, ".tmp").list());
+        }
+    }
+
+    @Test
+    public void partialUploadIsNotVisible() throws Exception {
+        // 받는 중인 임시 파일은 저장 위치가 아닌 .tmp 아래에 있으므로 이름으로 찾을 수 없다.
+        String[] tempFiles = new String[1];
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(new byte[8]), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                tempFiles[0] = new File(uploadDir, ".tmp").list()[0];
+                assertFalse(fileStore.find(tempFiles[0]).isPresent());
+                return -1;
+            }
+        });
+
+        fileStore.store("partial.bin", in, -1);
+
+        assertNotNull(tempFiles[0]);
+        assertFalse(new File(uploadDir, tempFiles[0]).exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidFilename() throws Exception {
+        fileStore.store("..", new ByteArrayInputStream(new byte[1]), 1);
+    }
+}
@@ -0,0 +1,47 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.util.WebUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.handler;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MatrixVariableRequestMappingHandlerMappingTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void parsesLikeWebUtils() {
+        String[] values = {"q=11", "q=11;r=12", "name=a,b;flag;q=", "a=x,,y;;b=1,", "JSESSIONID=1;q=2", ";q=1", "flag"};
+        for (String value : values) {
+            assertEquals(value, WebUtils.parseMatrixVariables(value),
+                    MatrixVariableRequestMappingHandlerMapping.parseMatrixVariables(value, 0));
+        }
+        assertEquals(WebUtils.parseMatrixVariables("q=22;s=23"),
+                MatrixVariableRequestMappingHandlerMapping.parseMatrixVariables("21;q=22;s=23", 3));
+    }
+
+    @Test
+    public void matrixVariablesOnlyWhereDeclared() throws Exception {
+        // @MatrixVariable name이 적용된다. (같은 이름의 event가 없으므로 404)
+        mockMvc.perform(get("/url_pattern/events/1;name=nobody-has-this-name"))
+                .andExpect(handler().methodName("getEvent"))
+                .andExpect(status().isNotFound());
+        // 다른 handler는 semicolon을 떼고 mapping을 찾는다.
+        mockMvc.perform(get("/hello/custom;jsessionid=1234"))
+                .andExpect(handler().methodName("helloCustom"))
+                .andExpect(status().isOk());
+    }
+}
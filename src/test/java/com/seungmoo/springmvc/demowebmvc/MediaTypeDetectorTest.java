@@ -0,0 +1,56 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+
+public class MediaTypeDetectorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void detectByExtensionAndCache() throws Exception {
+        MediaTypeDetector detector = new MediaTypeDetector(16);
+        Path json = temporaryFolder.newFile("event.json").toPath();
+        Files.write(json, "{}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("application/json", detector.detect(json));
+        assertEquals("application/json", detector.detect(json));
+
+        assertEquals(1, detector.getMissCount());
+        assertEquals(1, detector.getHitCount());
+        assertEquals(0, detector.getSniffCount()); // 확장자로 판단되면 파일 내용을 읽지 않는다.
+    }
+
+    @Test
+    public void sniffContentWhenExtensionUnknown() throws Exception {
+        MediaTypeDetector detector = new MediaTypeDetector(16);
+        Path noExtension = temporaryFolder.newFile("noextension").toPath();
+        Files.write(noExtension, "%PDF-1.4 hello".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals("application/pdf", detector.detect(noExtension));
+        assertEquals(1, detector.getSniffCount());
+
+        // 파일이 수정되면(mtime 변경) cache key가 달라져서 다시 판단한다.
+        Files.setLastModifiedTime(noExtension, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        detector.detect(noExtension);
+        assertEquals(2, detector.getMissCount());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        MediaTypeDetector detector = new MediaTypeDetector(2);
+        for (int i = 0; i < 3; i++) {
+            detector.detect(temporaryFolder.newFile("file" + i + ".txt").toPath());
+        }
+        assertEquals(2, detector.getCacheSize());
+    }
+}
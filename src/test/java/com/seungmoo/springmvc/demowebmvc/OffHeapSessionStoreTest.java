@@ -0,0 +1,63 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class OffHeapSessionStoreTest {
+
+    private final OffHeapSessionStore store = new OffHeapSessionStore(DataSize.ofKilobytes(1), Duration.ofHours(1));
+
+    @After
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    public void saveLoadAndExpire() throws Exception {
+        store.save("a", new byte[]{1, 2, 3}, Duration.ofHours(1));
+        store.save("b", new byte[]{4}, Duration.ofMillis(1));
+        assertArrayEquals(new byte[]{1, 2, 3}, store.load("a", Duration.ofHours(1)));
+        // 256 byte 단위로 잡는다.
+        assertEquals(512, store.getTotalBytes());
+
+        Thread.sleep(5);
+        assertNull(store.load("b", Duration.ofHours(1)));
+        store.sweep();
+        assertEquals(1, store.getSessionCount());
+        assertEquals(256, store.getTotalBytes());
+
+        // 같은 크기 단위면 buffer를 다시 쓴다.
+        store.save("a", new byte[200], Duration.ofHours(1));
+        assertEquals(256, store.getTotalBytes());
+        assertEquals(200, store.load("a", Duration.ofHours(1)).length);
+
+        store.delete("a");
+        assertEquals(0, store.getTotalBytes());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedWhenFull() throws Exception {
+        for (String id : new String[]{"a", "b", "c", "d"}) {
+            store.save(id, new byte[200], Duration.ofHours(1));
+            Thread.sleep(2);
+        }
+        assertEquals(1024, store.getTotalBytes());
+        // 가득 차도 거부하지 않고, 가장 오래 안쓴 것부터 (10% 여유가 생길 때까지) 지운다.
+        store.save("e", new byte[200], Duration.ofHours(1));
+        assertNull(store.load("a", Duration.ofHours(1)));
+        assertNull(store.load("b", Duration.ofHours(1)));
+        assertNotNull(store.load("c", Duration.ofHours(1)));
+        assertNotNull(store.load("e", Duration.ofHours(1)));
+        assertEquals(768, store.getTotalBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void largerThanStore() {
+        store.save("a", new byte[2000], Duration.ofHours(1));
+    }
+}
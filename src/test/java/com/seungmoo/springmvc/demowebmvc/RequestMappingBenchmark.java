@@ -0,0 +1,129 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * handler를 찾는 비용 (MatrixVariableRequestMappingHandlerMapping vs CachingRequestMappingHandlerMapping)
+ * - SampleController와 같은 모양의 mapping(정규식, /**, consumes 조건, 고정 path)에
+ *   routes 개수만큼 pattern mapping(/api/resource{n}/{id}/items/{item})을 더 등록한다.
+ * - app과 같이 MatrixVariableRequestMappingHandlerMapping(기본) / CachingRequestMappingHandlerMapping을 비교한다.
+ * - uniqueIds는 /events/{id}처럼 요청마다 id가 달라서 cache가 항상 miss인 경우다. (miss 비용이 기본 mapping과 같아야 한다.)
+ * 실행 : mvn -P benchmark verify -Djmh.include=RequestMappingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestMappingBenchmark {
+
+    @Param({"20", "500"})
+    public int routes;
+
+    @Param({"false", "true"})
+    public boolean matchCache;
+
+    private RequestMappingHandlerMapping mapping;
+    private MockHttpServletRequest exactPath;
+    private MockHttpServletRequest regexPath;
+    private MockHttpServletRequest wildcardPath;
+    private MockHttpServletRequest lastRoute;
+    private long nextId;
+
+    @Setup
+    public void setUp() throws Exception {
+        // JMH로 실행하면 logback 설정이 없어서 DEBUG log("Mapped to ...")까지 찍힌다.
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        UrlPathHelper urlPathHelper = new UrlPathHelper();
+        RequestMappingInfo.BuilderConfiguration config = new RequestMappingInfo.BuilderConfiguration();
+        config.setUrlPathHelper(urlPathHelper);
+        config.setPathMatcher(new AntPathMatcher());
+
+        mapping = matchCache ? new CachingRequestMappingHandlerMapping(10000) : new MatrixVariableRequestMappingHandlerMapping();
+        mapping.setUrlPathHelper(urlPathHelper);
+
+        Routes handler = new Routes();
+        Method method = Routes.class.getMethod("handle");
+        register(config, handler, method, RequestMappingInfo.paths("/hello/multipath/{name:[a-z]+}", "/hi/multipath/{name:[a-z]+}")
+                .methods(RequestMethod.GET, RequestMethod.PUT));
+        register(config, handler, method, RequestMappingInfo.paths("/hello/multipath/**", "/hi/multipath/**")
+                .methods(RequestMethod.GET, RequestMethod.PUT));
+        register(config, handler, method, RequestMappingInfo.paths("/hello/multipath/**", "/hi/multipath/**")
+                .methods(RequestMethod.POST));
+        register(config, handler, method, RequestMappingInfo.paths("/hello/reqJson", "/hi/reqJson")
+                .consumes(MediaType.APPLICATION_JSON_VALUE).produces(MediaType.APPLICATION_JSON_VALUE));
+        register(config, handler, method, RequestMappingInfo.paths("/hello/custom", "/hi/custom")
+                .methods(RequestMethod.GET));
+        for (int i = 0; i < routes; i++) {
+            register(config, handler, method, RequestMappingInfo.paths("/api/resource" + i + "/{id}/items/{item}")
+                    .methods(RequestMethod.GET));
+        }
+
+        exactPath = new MockHttpServletRequest("GET", "/hello/custom");
+        regexPath = new MockHttpServletRequest("GET", "/hello/multipath/seungmoo");
+        wildcardPath = new MockHttpServletRequest("POST", "/hello/multipath/a/b;q=1");
+        lastRoute = new MockHttpServletRequest("GET", "/api/resource" + (routes - 1) + "/42/items/7");
+    }
+
+    private void register(RequestMappingInfo.BuilderConfiguration config, Object handler, Method method,
+                          RequestMappingInfo.Builder builder) {
+        mapping.registerMapping(builder.options(config).build(), handler, method);
+    }
+
+    @Benchmark
+    public HandlerExecutionChain exactPath() throws Exception {
+        return mapping.getHandler(exactPath);
+    }
+
+    @Benchmark
+    public HandlerExecutionChain regexPath() throws Exception {
+        return mapping.getHandler(regexPath);
+    }
+
+    @Benchmark
+    public HandlerExecutionChain wildcardPath() throws Exception {
+        return mapping.getHandler(wildcardPath);
+    }
+
+    @Benchmark
+    public HandlerExecutionChain lastRoute() throws Exception {
+        return mapping.getHandler(lastRoute);
+    }
+
+    @Benchmark
+    public HandlerExecutionChain uniqueIds() throws Exception {
+        long id = nextId++;
+        return mapping.getHandler(new MockHttpServletRequest("GET", "/api/resource" + (routes - 1) + "/" + id + "/items/" + id));
+    }
+
+    public static class Routes {
+        public String handle() {
+            return "ok";
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.seungmoo.springmvc.demowebmvc;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -18,6 +21,7 @@ import java.util.Map;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -25,11 +29,30 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 // RunWith junit의 Annotation
 // SpringRunner : Spring에서 제공해주는 JUnit Runner임. Junit을 편하게 사용하도록 Spring에서 제공
 @RunWith(SpringRunner.class)
+// @WebMvcTest는 @Controller, Filter, HandlerInterceptor 같은 web 관련 bean만 올리고 일반 @Component는 올리지 않는다.
+// --> controller, filter, interceptor가 주입받는 bean은 @Import로 직접 올리거나 @MockBean으로 넣어준다.
+@Import({EventTaskExecutor.class, EventValidator.class, CompressionSupport.class, SimpleMeterRegistry.class})
 @WebMvcTest // @WebMvcTest 통해 Web Test 진행한다. (Web MVC에 관련된 Bean @Controller, @Service, @Repository만 체크)
 public class SampleControllerTest {
     @Autowired
     MockMvc mockMvc;
 
+    // EventController가 쓰는 저장소, 아무것도 저장되어 있지 않다.
+    @MockBean
+    EventRepository eventRepository;
+
+    // 파일, 업로드 관련 controller(FileController, ChunkedUploadController)가 쓰는 bean
+    @MockBean
+    FileSender fileSender;
+    @MockBean
+    MediaTypeDetector mediaTypeDetector;
+    @MockBean
+    FileStore fileStore;
+    @MockBean
+    HotFileCache hotFileCache;
+    @MockBean
+    ChunkedUploadService chunkedUploadService;
+
     // JUnit 테스트는 public void로 선언해야 한다. 그래야 junit test로 인식하고 실행할 수 있다.
     @Test
     public void helloTest() throws Exception {
@@ -136,12 +159,13 @@ public class SampleControllerTest {
 
     @Test
     public void getEventsWithId() throws Exception {
+        // 저장되지 않은 id --> 404
         mockMvc.perform(get("/events/1"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNotFound());
         mockMvc.perform(get("/events/2"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNotFound());
         mockMvc.perform(get("/events/3"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNotFound());
     }
 
     @Test
@@ -157,12 +181,13 @@ public class SampleControllerTest {
 
     @Test
     public void deleteEvent() throws Exception {
+        given(eventRepository.delete(1)).willReturn(true);
         mockMvc.perform(delete("/events/1"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNoContent());
         mockMvc.perform(delete("/events/2"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNotFound());
         mockMvc.perform(delete("/events/3"))
-                .andExpect(status().isOk());
+                .andExpect(status().isNotFound());
     }
 
     @Test
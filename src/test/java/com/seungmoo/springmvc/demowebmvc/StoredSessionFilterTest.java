@@ -0,0 +1,81 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.servlet.http.Cookie;
+
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Multi-Form(form/name --> form/limit)을 session.store.type=off-heap으로 진행해본다.
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "session.store.type=off-heap")
+@AutoConfigureMockMvc
+public class StoredSessionFilterTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    OffHeapSessionStore sessionStore;
+
+    @Test
+    public void multiFormFlow() throws Exception {
+        MvcResult result = mockMvc.perform(get("/url_pattern/events/form/name"))
+                .andExpect(status().isOk())
+                .andReturn();
+        // Tomcat session(JSESSIONID)이 아니라 SessionStore의 session
+        assertNull(result.getRequest().getSession(false));
+        Cookie session = result.getResponse().getCookie("SESSION");
+        assertNotNull(session);
+
+        mockMvc.perform(post("/url_pattern/events/form/name").cookie(session)
+                            .param("name", "off-heap")
+                            .param("startDate", "2020-10-13"))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/url_pattern/events/form/limit"));
+
+        // "event"가 저장소에서 다시 꺼내진다.
+        mockMvc.perform(get("/url_pattern/events/form/limit").cookie(session))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("event", hasProperty("name", is("off-heap"))));
+
+        result = mockMvc.perform(post("/url_pattern/events/form/limit").cookie(session)
+                            .param("limit", "30"))
+                .andExpect(status().is3xxRedirection())
+                .andReturn();
+        // flash attribute도 session을 거쳐서 넘어간다.
+        Event flashed = (Event) result.getFlashMap().get("newEvent");
+        assertEquals("off-heap", flashed.getName());
+        assertEquals(Integer.valueOf(30), flashed.getLimit());
+
+        mockMvc.perform(get("/url_pattern/events/list").cookie(session))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void unknownSessionIsReplaced() throws Exception {
+        int before = sessionStore.getSessionCount();
+        MvcResult result = mockMvc.perform(get("/url_pattern/events/form/name").cookie(new Cookie("SESSION", "unknown")))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertNotEquals("unknown", result.getResponse().getCookie("SESSION").getValue());
+        assertEquals(before + 1, sessionStore.getSessionCount());
+
+        // session을 쓰지 않는 요청은 session을 만들지 않는다.
+        mockMvc.perform(get("/hello/custom"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().doesNotExist("SESSION"));
+    }
+}
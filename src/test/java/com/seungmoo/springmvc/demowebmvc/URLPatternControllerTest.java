@@ -1,10 +1,13 @@
 package com.seungmoo.springmvc.demowebmvc;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -12,25 +15,51 @@ import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @Slf4j
 @RunWith(SpringRunner.class)
+// @WebMvcTest는 web 관련 bean(@Controller, Filter, HandlerInterceptor 등)만 올린다.
+// --> 이들이 주입받는 일반 @Component는 @Import로 올리거나 @MockBean으로 넣어준다.
+@Import({EventTaskExecutor.class, EventValidator.class, CompressionSupport.class, SimpleMeterRegistry.class})
 @WebMvcTest
 public class URLPatternControllerTest {
     @Autowired
     MockMvc mockMvc;
 
+    // @WebMvcTest는 web 관련 bean만 등록하므로 저장소는 mock으로 넣어준다.
+    @MockBean
+    EventRepository eventRepository;
+
+    // 같이 올라가는 FileController, ChunkedUploadController가 쓰는 bean
+    @MockBean
+    FileSender fileSender;
+    @MockBean
+    MediaTypeDetector mediaTypeDetector;
+    @MockBean
+    FileStore fileStore;
+    @MockBean
+    HotFileCache hotFileCache;
+    @MockBean
+    ChunkedUploadService chunkedUploadService;
+
     @Test
     public void getEventV1() throws Exception {
         // 현재 스프링부트 커뮤니티에서 URI에 Matrix binding으로 KEY-VALUE request 보내주는 것 논의 중
         // ex) /events/1;name=seungmoo
+        Event event = new Event();
+        event.setId(1);
+        event.setName("seungmoo");
+        given(eventRepository.findById(1)).willReturn(Optional.of(event));
+
         // Matrix binding은 not default support --> WebConfig에서 setting 필요
         mockMvc.perform(get("/url_pattern/events/1;name=seungmoo"))
                 .andDo(print())
@@ -68,7 +97,9 @@ public class URLPatternControllerTest {
 
     @Test
     public void eventModelAttribute() throws Exception {
+        // @SessionAttributes("event")에 있는 이름은 session에 먼저 있어야 한다. (없으면 HttpSessionRequiredException)
         mockMvc.perform(get("/url_pattern/events/model_attribute/name/seungmoo")
+                            .sessionAttr("event", new Event())
                             .param("limit", "-10"))
                 .andDo(print())
                 .andExpect(status().isOk())
@@ -77,7 +108,9 @@ public class URLPatternControllerTest {
 
     @Test
     public void eventPost() throws Exception {
-        ResultActions result = mockMvc.perform(post("/url_pattern/events/validated/form")
+        // handler는 편의상 GetMapping으로 되어 있다.
+        ResultActions result = mockMvc.perform(get("/url_pattern/events/validated/form")
+                                                .sessionAttr("event", new Event())
                                                 .param("name", "seungmoo")
                                                 .param("limit", "-10"))
                                         .andDo(print())
@@ -94,13 +127,26 @@ public class URLPatternControllerTest {
         Event newEvent = new Event();
         newEvent.setName("Winter is coming");
         newEvent.setLimit(10000);
+        Event stored = new Event();
+        stored.setName("stored");
+        given(eventRepository.findByNamePrefix("", null, 100)).willReturn(new EventPage(Collections.singletonList(stored), "next-page"));
+        given(eventRepository.findByNamePrefix("", "next-page", 100)).willReturn(new EventPage(Collections.singletonList(stored), null));
 
         mockMvc.perform(get("/url_pattern/events/list")
                             .sessionAttr("visitTime", LocalDateTime.now())
                             .flashAttr("newEvent", newEvent))
                         .andDo(print())
                         .andExpect(status().isOk())
-                        .andExpect(xpath("//p").nodeCount(2)) // p 노드가 2개 있는지 check
+                        .andExpect(xpath("//p").nodeCount(3)) // p 노드가 3개 있는지 check
+                        .andExpect(xpath("//a[text()='Next']/@href").string("/url_pattern/events/list?cursor=next-page"))
                         .andExpect(model().attributeExists("categories"));
+
+        // 저장소의 Event는 한 화면에 event.list.page-size개까지, 다음 화면은 cursor로 이어서 본다.
+        mockMvc.perform(get("/url_pattern/events/list")
+                            .sessionAttr("visitTime", LocalDateTime.now())
+                            .param("cursor", "next-page"))
+                        .andExpect(status().isOk())
+                        .andExpect(xpath("//p").nodeCount(1))
+                        .andExpect(xpath("//a[text()='Next']").doesNotExist());
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tomcat thread pool vs virtual thread 비교 (부하 테스트라 평소에는 건너뛴다.)
+ * - 느린 client 여러 개가 PUT /file/{filename}으로 조금씩 업로드한다. --> 요청마다 thread 하나가 body를 기다리며 blocking
+ * - thread pool을 작게(20개) 잡고, 같은 부하를 thread pool / virtual thread로 각각 보내서 처리량과 thread 수, heap 사용량을 출력한다.
+ * - 두 모드 모두 upload가 모두 저장되어야 하고, virtual thread 모드가 실제로 켜져 있어야 한다.
+ * - 느린 client의 body는 queue에서 기다리는 동안에도 socket buffer에 쌓이므로 처리량 차이는 크지 않다.
+ *   대신 virtual thread가 pinning(synchronized 안의 blocking I/O) 등으로 thread pool의 절반 아래로 떨어지지 않는지 본다.
+ * - Java 21 이상에서만 돌아간다. (그 아래면 skip) 빌드는 Java 8이므로 surefire가 test를 실행할 JVM(-Djvm)만 바꾼다.
+ *
+ * 실행 : mvn -B -P loadtest test -Dtest=VirtualThreadLoadTest -Djvm=/path/to/jdk-21/bin/java
+ */
+public class VirtualThreadLoadTest {
+
+    private static final int CLIENTS = 200;
+    private static final int CHUNKS = 8;
+    private static final int CHUNK_BYTES = 1024;
+    private static final long CHUNK_INTERVAL_MILLIS = 50;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void compareThreadPoolAndVirtualThreads() throws Exception {
+        assumeTrue("load test, run with -P loadtest", Boolean.getBoolean("loadtest"));
+        String javaVersion = System.getProperty("java.specification.version");
+        assumeTrue("virtual threads need Java 21+, running on " + System.getProperty("java.version"),
+                !javaVersion.startsWith("1.") && Integer.parseInt(javaVersion) >= 21);
+
+        Result pool = run(false);
+        System.out.println(pool.format("thread pool"));
+        Result virtual = run(true);
+        System.out.println(virtual.format("virtual threads"));
+        System.out.printf("throughput x%.1f, peak threads %+d, heap %+d MB%n",
+                virtual.throughput() / pool.throughput(),
+                virtual.peakThreads - pool.peakThreads,
+                (virtual.heapUsed - pool.heapUsed) / (1024 * 1024));
+
+        assertTrue(String.format("virtual threads %.1f req/s, thread pool %.1f req/s", virtual.throughput(), pool.throughput()),
+                virtual.throughput() > pool.throughput() * 0.5);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        String dir = temporaryFolder.newFolder().getPath();
+        ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(DemoWebMvcApplication.class)
+                // properties()는 default 값이라 application.properties에 밀리므로 command line 인자로 넘긴다.
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=20",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--file.upload.dir=" + dir + "/upload",
+                        "--event.store.dir=" + dir + "/events");
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            int port = context.getWebServer().getPort();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            // client thread를 미리 다 띄워두고 측정한다. (server 쪽 차이만 보이도록)
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.submit(() -> { }).get();
+            }
+            System.gc();
+            threads.resetPeakThreadCount();
+
+            long started = System.nanoTime();
+            List<Future<Integer>> uploads = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                String url = "http://localhost:" + port + "/file/slow-" + i + ".bin";
+                uploads.add(clients.submit(() -> slowUpload(url)));
+            }
+            for (Future<Integer> upload : uploads) {
+                assertEquals(Integer.valueOf(201), upload.get());
+            }
+            long elapsed = System.nanoTime() - started;
+            int peakThreads = threads.getPeakThreadCount();
+            assertEquals(virtualThreads, !context.getBeansOfType(VirtualThreadTomcatCustomizer.class).isEmpty());
+            FileStore store = context.getBean(FileStore.class);
+            for (int i = 0; i < CLIENTS; i++) {
+                assertEquals((long) CHUNKS * CHUNK_BYTES, store.find("slow-" + i + ".bin").get().getSize());
+            }
+            // 요청이 끝난 뒤에도 남아있는 heap (Tomcat thread, 연결 buffer 등)
+            System.gc();
+            return new Result(elapsed, peakThreads, memory.getHeapMemoryUsage().getUsed());
+        } finally {
+            clients.shutdownNow();
+            context.close();
+        }
+    }
+
+    // 조금씩 보내는 client (느린 네트워크)
+    private static int slowUpload(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(CHUNK_BYTES);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        try (OutputStream out = connection.getOutputStream()) {
+            for (int i = 0; i < CHUNKS; i++) {
+                chunk[0] = (byte) i;
+                out.write(chunk);
+                out.flush();
+                Thread.sleep(CHUNK_INTERVAL_MILLIS);
+            }
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static class Result {
+        final long elapsedNanos;
+        final int peakThreads;
+        final long heapUsed;
+
+        Result(long elapsedNanos, int peakThreads, long heapUsed) {
+            this.elapsedNanos = elapsedNanos;
+            this.peakThreads = peakThreads;
+            this.heapUsed = heapUsed;
+        }
+
+        double throughput() {
+            return CLIENTS / (elapsedNanos / 1e9);
+        }
+
+        String format(String mode) {
+            return String.format("%-16s %d uploads in %d ms, %.1f req/s, peak threads %d, heap used %d MB",
+                    mode, CLIENTS, elapsedNanos / 1_000_000, throughput(), peakThreads, heapUsed / (1024 * 1024));
+        }
+    }
+}
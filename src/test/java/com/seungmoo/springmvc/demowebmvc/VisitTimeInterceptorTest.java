@@ -0,0 +1,54 @@
+package com.seungmoo.springmvc.demowebmvc;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.*;
+
+public class VisitTimeInterceptorTest {
+
+    private final VisitTimeInterceptor interceptor =
+            new VisitTimeInterceptor("cookie", "VISIT", Duration.ofDays(30), "test-secret");
+
+    @Test
+    public void cookieStoreDoesNotCreateSession() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/url_pattern/events/list");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+
+        assertNull(request.getSession(false));
+        assertTrue(request.getAttribute("visitTime") instanceof LocalDateTime);
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertThat(setCookie, containsString("HttpOnly"));
+
+        // 다음 요청에서 cookie를 보내면 같은 방문 시간을 쓰고 다시 발급하지 않는다.
+        String value = response.getCookie("VISIT").getValue();
+        MockHttpServletRequest next = new MockHttpServletRequest("GET", "/url_pattern/events/list");
+        next.setCookies(new Cookie("VISIT", value));
+        MockHttpServletResponse nextResponse = new MockHttpServletResponse();
+        interceptor.preHandle(next, nextResponse, null);
+
+        assertEquals(request.getAttribute("visitTime"), next.getAttribute("visitTime"));
+        assertNull(nextResponse.getHeader(HttpHeaders.SET_COOKIE));
+    }
+
+    @Test
+    public void tamperedCookieIsIgnored() {
+        String signed = "1600000000000." + interceptor.sign("1600000000000");
+        assertEquals(Long.valueOf(1600000000000L), interceptor.verify(signed));
+
+        assertNull(interceptor.verify("1500000000000." + interceptor.sign("1600000000000")));
+        assertNull(interceptor.verify("1600000000000"));
+        // 다른 secret으로 서명한 cookie
+        VisitTimeInterceptor other = new VisitTimeInterceptor("cookie", "VISIT", Duration.ofDays(30), "other");
+        assertNull(other.verify(signed));
+    }
+}